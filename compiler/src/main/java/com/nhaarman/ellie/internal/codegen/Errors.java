@@ -19,4 +19,5 @@ package com.nhaarman.ellie.internal.codegen;
 
 public class Errors {
 	public static final String COLUMN_DUPLICATE_ERROR = "@Column with name already exists: ";
+	public static final String COLUMN_BYTE_ARRAY_ERROR = "Byte[] columns are not supported, use byte[] instead.";
 }
@@ -46,6 +46,7 @@ import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.PrimitiveType;
 import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 
 public class ColumnElement {
 
@@ -77,6 +78,7 @@ public class ColumnElement {
 	private String sqlType;
 
 	private boolean isModel;
+	private boolean isLazy;
 	private String modelTableName;
 
 	private Map<Class<? extends Annotation>, Annotation> annotations = Maps.newHashMap();
@@ -85,12 +87,21 @@ public class ColumnElement {
 		this.element = element;
 		this.column = element.getAnnotation(Column.class);
 		this.enclosingType = enclosingType;
-		this.deserializedType = registry.getElements().getTypeElement(getType(element));
+
+		final TypeElement lazyElement = registry.getElements().getTypeElement("com.nhaarman.ellie.Lazy");
+		final TypeMirror type = element.asType();
+		isLazy = type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().equals(lazyElement);
+		if (isLazy) {
+			final List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+			this.deserializedType = typeArguments.isEmpty() ? null : (TypeElement) registry.getTypes().asElement(typeArguments.get(0));
+		} else {
+			this.deserializedType = registry.getElements().getTypeElement(getType(element));
+		}
 
 		final TypeAdapterElement typeAdapterElement = registry.getTypeAdapterElement(deserializedType);
 		final TypeElement modelElement = registry.getElements().getTypeElement("com.nhaarman.ellie.Model");
 		final DeclaredType modelType = registry.getTypes().getDeclaredType(modelElement);
-		isModel = registry.getTypes().isAssignable(element.asType(), modelType);
+		isModel = isLazy || registry.getTypes().isAssignable(type, modelType);
 
 		if (isModel) {
 			final Table table = deserializedType.getAnnotation(Table.class);
@@ -135,6 +146,30 @@ public class ColumnElement {
 		return isModel;
 	}
 
+	/**
+	 * Returns whether the column is a {@code Lazy} reference to a model, which is loaded on first access rather than
+	 * together with the row.
+	 */
+	public boolean isLazy() {
+		return isLazy;
+	}
+
+	public boolean isPrimaryKey() {
+		return annotations.containsKey(PrimaryKey.class);
+	}
+
+	public boolean isUnique() {
+		return annotations.containsKey(Unique.class);
+	}
+
+	public boolean isPrimitive() {
+		return element.asType().getKind().isPrimitive();
+	}
+
+	public String getTypeName() {
+		return element.asType().toString();
+	}
+
 	public String getFieldName() {
 		return element.getSimpleName().toString();
 	}
@@ -17,6 +17,8 @@
 
 package com.nhaarman.ellie.internal.codegen.element;
 
+import com.nhaarman.ellie.annotation.Cache;
+
 import javax.lang.model.element.TypeElement;
 
 public class ModelRepositoryElement {
@@ -34,4 +36,11 @@ public class ModelRepositoryElement {
     public String getModelQualifiedName() {
         return mElement.getQualifiedName().toString();
     }
+
+    /**
+     * Returns the cache configuration of the model, or null if the model uses the configuration passed to Ellie.init.
+     */
+    public Cache getCache() {
+        return mElement.getAnnotation(Cache.class);
+    }
 }
@@ -26,6 +26,11 @@ import com.nhaarman.ellie.internal.codegen.element.ColumnElement;
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.util.List;
 import java.util.Set;
 
 import static javax.lang.model.element.ElementKind.CLASS;
@@ -58,6 +63,25 @@ public class ColumnValidator implements Validator {
 			}
 		}
 
+		TypeMirror type = element.asType();
+		TypeElement lazyElement = registry.getElements().getTypeElement("com.nhaarman.ellie.Lazy");
+		if (type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().equals(lazyElement)) {
+			List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+			if (typeArguments.isEmpty() || typeArguments.get(0).getKind() != TypeKind.DECLARED) {
+				messager.printMessage(ERROR, "Lazy columns must declare the referenced model type.", element);
+				return false;
+			}
+		}
+
+		if (type.getKind() == TypeKind.ARRAY) {
+			TypeMirror componentType = ((ArrayType) type).getComponentType();
+			TypeElement byteElement = registry.getElements().getTypeElement(Byte.class.getName());
+			if (componentType.getKind() == TypeKind.DECLARED && ((DeclaredType) componentType).asElement().equals(byteElement)) {
+				messager.printMessage(ERROR, Errors.COLUMN_BYTE_ARRAY_ERROR, element);
+				return false;
+			}
+		}
+
 		return true;
 	}
 }
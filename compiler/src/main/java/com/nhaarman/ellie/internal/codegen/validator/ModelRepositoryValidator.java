@@ -17,12 +17,17 @@
 
 package com.nhaarman.ellie.internal.codegen.validator;
 
+import com.nhaarman.ellie.annotation.Cache;
 import com.nhaarman.ellie.internal.codegen.Registry;
 
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.util.ElementFilter;
 
 import static javax.lang.model.element.ElementKind.CLASS;
+import static javax.lang.model.element.Modifier.ABSTRACT;
+import static javax.lang.model.element.Modifier.PUBLIC;
 import static javax.tools.Diagnostic.Kind.ERROR;
 
 public class ModelRepositoryValidator implements Validator {
@@ -35,6 +40,34 @@ public class ModelRepositoryValidator implements Validator {
 
     @Override
     public boolean validate(final Element enclosingElement, final Element element) {
-        return true;
+        if (element.getModifiers().contains(ABSTRACT)) {
+            mMessager.printMessage(ERROR, "@Table classes cannot be abstract.", element);
+            return false;
+        }
+
+        Cache cache = element.getAnnotation(Cache.class);
+        if (cache != null) {
+            if (cache.size() <= 0 && cache.type().isBounded()) {
+                mMessager.printMessage(ERROR, "@Cache size must be positive.", element);
+                return false;
+            }
+            if (cache.ttl() < 0) {
+                mMessager.printMessage(ERROR, "@Cache ttl cannot be negative.", element);
+                return false;
+            }
+            if (cache.ttl() > 0 && !cache.type().supportsTtl()) {
+                mMessager.printMessage(ERROR, "@Cache ttl is not supported for " + cache.type() + " caches.", element);
+                return false;
+            }
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(PUBLIC)) {
+                return true;
+            }
+        }
+
+        mMessager.printMessage(ERROR, "@Table classes must have a public no-argument constructor.", element);
+        return false;
     }
 }
@@ -17,9 +17,9 @@
 
 package com.nhaarman.ellie.internal.codegen.writer;
 
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.google.common.collect.Sets;
 import com.nhaarman.ellie.Ellie;
@@ -28,14 +28,19 @@ import com.nhaarman.ellie.ModelRepository;
 import com.nhaarman.ellie.annotation.Table;
 import com.nhaarman.ellie.internal.codegen.Registry;
 import com.nhaarman.ellie.internal.codegen.element.ColumnElement;
-import com.nhaarman.ellie.query.Select;
-import com.nhaarman.ellie.util.LruCache;
+import com.nhaarman.ellie.util.LongCache;
+import com.nhaarman.ellie.util.ColumnIndexes;
+import com.nhaarman.ellie.util.RowSignatures;
 import com.squareup.javawriter.JavaWriter;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,7 +48,6 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 
 import static javax.lang.model.element.Modifier.FINAL;
-import static javax.lang.model.element.Modifier.STATIC;
 
 @SuppressWarnings("HardCodedStringLiteral") public class ModelRepositoryWriter implements SourceWriter<TypeElement> {
 
@@ -65,10 +69,45 @@ import static javax.lang.model.element.Modifier.STATIC;
         }
     };
 
+    private static final Map<String, String> STATEMENT_METHOD_MAP = new HashMap<String, String>() {
+        {
+            put(byte[].class.getName(), "bindBlob");
+            put(double.class.getName(), "bindDouble");
+            put(Double.class.getName(), "bindDouble");
+            put(float.class.getName(), "bindDouble");
+            put(Float.class.getName(), "bindDouble");
+            put(int.class.getName(), "bindLong");
+            put(Integer.class.getName(), "bindLong");
+            put(long.class.getName(), "bindLong");
+            put(Long.class.getName(), "bindLong");
+            put(short.class.getName(), "bindLong");
+            put(Short.class.getName(), "bindLong");
+            put(String.class.getName(), "bindString");
+        }
+    };
+
+    private static final Map<String, String> SIGNATURE_METHOD_MAP = new HashMap<String, String>() {
+        {
+            put(byte[].class.getName(), "mixBlob");
+            put(double.class.getName(), "mixDouble");
+            put(Double.class.getName(), "mixDouble");
+            put(float.class.getName(), "mixDouble");
+            put(Float.class.getName(), "mixDouble");
+            put(int.class.getName(), "mixLong");
+            put(Integer.class.getName(), "mixLong");
+            put(long.class.getName(), "mixLong");
+            put(Long.class.getName(), "mixLong");
+            put(short.class.getName(), "mixLong");
+            put(Short.class.getName(), "mixLong");
+            put(String.class.getName(), "mixString");
+        }
+    };
+
     private static final EnumSet<Modifier> PRIVATE = EnumSet.of(Modifier.PRIVATE, FINAL);
+    private static final EnumSet<Modifier> PRIVATE_STATIC = EnumSet.of(Modifier.PRIVATE, Modifier.STATIC, FINAL);
+    private static final EnumSet<Modifier> PRIVATE_VOLATILE = EnumSet.of(Modifier.PRIVATE, Modifier.VOLATILE);
     private static final EnumSet<Modifier> PUBLIC = EnumSet.of(Modifier.PUBLIC, FINAL);
     private static final EnumSet<Modifier> PUBLIC_FINAL = EnumSet.of(Modifier.PUBLIC, FINAL);
-    private static final EnumSet<Modifier> PRIVATE_STATIC = EnumSet.of(Modifier.PRIVATE, STATIC);
 
     private final Registry mRegistry;
 
@@ -101,20 +140,32 @@ import static javax.lang.model.element.Modifier.STATIC;
         javaWriter.beginType(classSimpleName, "class", PUBLIC_FINAL, null, "ModelRepository<" + modelSimpleName + ">");
         javaWriter.emitEmptyLine();
 
-        writeFields(javaWriter, modelSimpleName);
-        writeConstructor(javaWriter);
-        writeFind(javaWriter, modelSimpleName);
-        writeCreate(javaWriter, modelSimpleName, tableName);
+        writeFields(javaWriter, modelSimpleName, tableName, columns);
+        writeConstructor(javaWriter, modelSimpleName);
+        writeNewInstance(javaWriter, modelSimpleName);
+        writeFind(javaWriter, modelSimpleName, tableName);
+        writeFindAll(javaWriter, modelSimpleName, tableName);
+        writeCreate(javaWriter, modelSimpleName);
         writeUpdate(javaWriter, modelSimpleName, tableName);
-        writeLoad(javaWriter, modelQualifiedName, columns);
-        writeCreateOrUpdate(javaWriter, modelSimpleName);
-        writeDelete(javaWriter, modelSimpleName, tableName);
+        writeLoad(javaWriter, modelQualifiedName);
+        writeLoadWithColumnIndexes(javaWriter, modelQualifiedName, columns);
+        writeGetColumnIndexes(javaWriter, columns);
+        writeGetSignature(javaWriter, columns);
+        writeFindReferences(javaWriter, columns);
+        writeUpsert(javaWriter, modelSimpleName, tableName, columns);
+        writeCreateOrUpdate(javaWriter, modelSimpleName, columns);
+        writeCreateAll(javaWriter, modelSimpleName);
+        writeSaveAll(javaWriter, modelSimpleName);
+        writeDelete(javaWriter, modelSimpleName);
         writePutEntity(javaWriter, modelSimpleName);
         writeGetEntity(javaWriter, modelSimpleName);
         writeRemoveEntity(javaWriter, modelSimpleName);
         writeGetOrFindEntity(javaWriter, modelSimpleName);
-        writeCreateContentValues(javaWriter, modelQualifiedName, columns);
-        writeGetEntityIdentifier(javaWriter, modelSimpleName);
+        writeBind(javaWriter, modelSimpleName, columns);
+        writeBindColumns(javaWriter, modelSimpleName, columns);
+        writeSnapshot(javaWriter, modelSimpleName, columns);
+        writeGetChangedColumns(javaWriter, columns);
+        writeSnapshotType(javaWriter, columns);
 
         javaWriter.endType();
     }
@@ -125,17 +176,22 @@ import static javax.lang.model.element.Modifier.STATIC;
         Set<String> imports = Sets.newHashSet(
                 modelQualifiedName,
                 Ellie.class.getName(),
-                ContentValues.class.getName(),
                 Cursor.class.getName(),
                 SQLiteDatabase.class.getName(),
+                SQLiteStatement.class.getName(),
                 ModelRepository.class.getName(),
-                Select.class.getName(),
-                LruCache.class.getName()
+                LongCache.class.getName(),
+                RowSignatures.class.getName(),
+                ColumnIndexes.class.getName(),
+                Collection.class.getName(),
+                List.class.getName()
         );
 
+        boolean hasReferences = false;
         for (ColumnElement column : columns) {
             if (column.isModel()) {
                 imports.add(Long.class.getName());
+                hasReferences |= !column.isLazy();
             }
             if (column.requiresTypeAdapter()) {
                 imports.add(column.getDeserializedQualifiedName());
@@ -143,59 +199,120 @@ import static javax.lang.model.element.Modifier.STATIC;
             }
         }
 
+        imports.add(hasReferences ? ArrayList.class.getName() : Collections.class.getName());
+
         writer.emitImports(imports);
         writer.emitEmptyLine();
     }
 
-    private void writeFields(final JavaWriter javaWriter, final String modelSimpleName) throws IOException {
+    private void writeFields(final JavaWriter javaWriter, final String modelSimpleName, final String tableName, final Set<ColumnElement> columns)
+            throws IOException {
+        final StringBuilder columnNames = new StringBuilder();
+        for (ColumnElement column : columns) {
+            if (columnNames.length() > 0) {
+                columnNames.append(", ");
+            }
+            columnNames.append('"').append(column.getColumnName()).append('"');
+        }
+        javaWriter.emitField(String.class.getSimpleName() + "[]", "COLUMN_NAMES", PRIVATE_STATIC, "{" + columnNames + "}");
+        // Statements are compiled for each call rather than shared: the platform caches the prepared statements of
+        // each connection, and a shared statement would have to be locked while waiting for the connection.
+        javaWriter.emitField(String.class.getSimpleName(), "INSERT_SQL", PRIVATE_STATIC, '"' + createInsertSql(tableName, columns) + '"');
+        javaWriter.emitField(String.class.getSimpleName(), "DELETE_SQL", PRIVATE_STATIC, '"' + createDeleteSql(tableName) + '"');
         javaWriter.emitField(Ellie.class.getSimpleName(), "mEllie", PRIVATE);
         javaWriter.emitField(SQLiteDatabase.class.getSimpleName(), "mDatabase", PRIVATE);
         javaWriter.emitField(
                 String.format(
-                        "%s<%s, %s>",
-                        LruCache.class.getSimpleName(),
-                        String.class.getSimpleName(),
+                        "%s<%s>",
+                        LongCache.class.getSimpleName(),
                         modelSimpleName
                 ),
                 "mCache",
                 PRIVATE
         );
+        javaWriter.emitField(ColumnIndexes.class.getSimpleName(), "mColumnIndexes", PRIVATE_VOLATILE);
 
         javaWriter.emitEmptyLine();
     }
 
-    private void writeConstructor(final JavaWriter javaWriter) throws IOException {
+    private void writeConstructor(final JavaWriter javaWriter, final String modelSimpleName) throws IOException {
         javaWriter.beginConstructor(
                 EnumSet.of(Modifier.PUBLIC),
                 "final " + Ellie.class.getSimpleName(), "ellie",
                 "final " + SQLiteDatabase.class.getSimpleName(), "database",
-                "final int", "cacheSize"
+                String.format("final %s<%s>", LongCache.class.getSimpleName(), modelSimpleName), "cache"
         );
 
         javaWriter.emitStatement("mEllie = ellie");
         javaWriter.emitStatement("mDatabase = database");
-        javaWriter.emitStatement("mCache = new LruCache<>(cacheSize)");
+        javaWriter.emitStatement("mCache = cache");
 
         javaWriter.endConstructor();
         javaWriter.emitEmptyLine();
     }
 
-    private void writeFind(final JavaWriter javaWriter, final String modelSimpleName) throws IOException {
+    private void writeNewInstance(final JavaWriter javaWriter, final String modelSimpleName) throws IOException {
+        javaWriter.emitAnnotation(Override.class);
+        javaWriter.beginMethod(modelSimpleName, "newInstance", PUBLIC);
+
+        javaWriter.emitStatement("return new %s()", modelSimpleName);
+
+        javaWriter.endMethod();
+        javaWriter.emitEmptyLine();
+    }
+
+    private void writeFind(final JavaWriter javaWriter, final String modelSimpleName, final String tableName) throws IOException {
         javaWriter.emitAnnotation(Override.class);
         javaWriter.beginMethod(modelSimpleName, "find", PUBLIC, "final long", " id");
 
-        javaWriter.emitStatement("return new Select().from(%s.class).where(\"%s=?\", id).fetchSingle()", modelSimpleName, Model.COLUMN_ID);
+        javaWriter.emitStatement(
+                "final Cursor cursor = mEllie.rawQuery(\"SELECT * FROM %s WHERE %s=?\", \"%s\", id)",
+                tableName,
+                Model.COLUMN_ID,
+                tableName
+        );
+        javaWriter.beginControlFlow("try");
+        javaWriter.beginControlFlow("if (!cursor.moveToFirst())");
+        javaWriter.emitStatement("return null");
+        javaWriter.endControlFlow();
+        javaWriter.emitStatement("%s entity = getEntity(id)", modelSimpleName);
+        javaWriter.beginControlFlow("if (entity == null)");
+        javaWriter.emitStatement("entity = newInstance()");
+        javaWriter.endControlFlow();
+        javaWriter.emitStatement("load(entity, cursor)");
+        javaWriter.emitStatement("putEntity(entity)");
+        javaWriter.emitStatement("return entity");
+        javaWriter.nextControlFlow("finally");
+        javaWriter.emitStatement("cursor.close()");
+        javaWriter.endControlFlow();
 
         javaWriter.endMethod();
         javaWriter.emitEmptyLine();
     }
 
-    private void writeCreate(final JavaWriter javaWriter, final String modelSimpleName, final String tableName) throws IOException {
+    private void writeFindAll(final JavaWriter javaWriter, final String modelSimpleName, final String tableName) throws IOException {
+        javaWriter.emitAnnotation(Override.class);
+        javaWriter.beginMethod("List<" + modelSimpleName + ">", "findAll", PUBLIC, "final long[]", "ids");
+
+        javaWriter.emitStatement("return mEllie.findAll(this, \"%s\", ids)", tableName);
+
+        javaWriter.endMethod();
+        javaWriter.emitEmptyLine();
+    }
+
+    private void writeCreate(final JavaWriter javaWriter, final String modelSimpleName) throws IOException {
         javaWriter.emitAnnotation(Override.class);
         javaWriter.beginMethod(Long.class.getSimpleName(), "create", PUBLIC, "final " + modelSimpleName, " entity");
 
-        javaWriter.emitStatement("ContentValues values = createContentValues(entity)");
-        javaWriter.emitStatement("entity.setId(mDatabase.insert(\"%s\", null, values))", tableName);
+        javaWriter.emitStatement("final SQLiteStatement statement = mDatabase.compileStatement(INSERT_SQL)");
+        javaWriter.beginControlFlow("try");
+        javaWriter.emitStatement("bind(statement, entity)");
+        javaWriter.emitStatement("entity.setId(statement.executeInsert())");
+        javaWriter.nextControlFlow("finally");
+        javaWriter.emitStatement("statement.close()");
+        javaWriter.endControlFlow();
+        javaWriter.emitStatement("mEllie.onEntityWritten(entity, snapshot(entity))");
+        javaWriter.emitStatement("mEllie.notifyTableChanged(%s.class)", modelSimpleName);
         javaWriter.emitStatement("return entity.getId()");
 
         javaWriter.endMethod();
@@ -206,23 +323,52 @@ import static javax.lang.model.element.Modifier.STATIC;
         javaWriter.emitAnnotation(Override.class);
         javaWriter.beginMethod(Long.class.getSimpleName(), "update", PUBLIC, "final " + modelSimpleName, " entity");
 
-        javaWriter.emitStatement("ContentValues values = createContentValues(entity)");
-        javaWriter.emitStatement("mDatabase.update(\"%s\", values, Model.COLUMN_ID + \"=?\", new String[]{entity.getId().toString()})", tableName);
+        javaWriter.emitStatement("final Snapshot snapshot = snapshot(entity)");
+        javaWriter.emitStatement("final long changedColumns = getChangedColumns((Snapshot) ((Model) entity).getSnapshot(), snapshot)");
+        javaWriter.beginControlFlow("if (mEllie.updateColumns(this, entity, \"%s\", COLUMN_NAMES, changedColumns))", tableName);
+        javaWriter.emitStatement("mEllie.onEntityWritten(entity, snapshot)");
+        javaWriter.emitStatement("mEllie.notifyTableChanged(%s.class)", modelSimpleName);
+        javaWriter.endControlFlow();
         javaWriter.emitStatement("return entity.getId()");
 
         javaWriter.endMethod();
         javaWriter.emitEmptyLine();
     }
 
-    private void writeLoad(final JavaWriter writer, final String modelQualifiedName, final Set<ColumnElement> columns) throws IOException {
+    private void writeLoad(final JavaWriter writer, final String modelQualifiedName) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(void.class.getSimpleName(), "load", PUBLIC, "final " + modelQualifiedName, "entity", "final Cursor", "cursor");
+
+        writer.emitStatement("load(entity, cursor, getColumnIndexes(cursor))");
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeLoadWithColumnIndexes(final JavaWriter writer, final String modelQualifiedName, final Set<ColumnElement> columns) throws IOException {
         writer.emitAnnotation(Override.class);
-        writer.beginMethod(void.class.getSimpleName(), "load", EnumSet.of(Modifier.PUBLIC, FINAL), "final " + modelQualifiedName, "entity", "final Cursor", "cursor");
+        writer.beginMethod(
+                void.class.getSimpleName(),
+                "load",
+                PUBLIC,
+                "final " + modelQualifiedName, "entity",
+                "final Cursor", "cursor",
+                "final int[]", "columnIndexes"
+        );
 
+        int columnIndex = 0;
         for (ColumnElement column : columns) {
             final StringBuilder value = new StringBuilder();
 
             int closeParens = 1;
-            if (column.isModel()) {
+            if (column.isLazy()) {
+                closeParens++;
+                value.append("cursor.isNull(columnIndexes[").append(columnIndex).append("]) ? null : new Lazy<")
+                     .append(column.getDeserializedQualifiedName())
+                     .append(">(mEllie.getModelRepository(")
+                     .append(column.getDeserializedQualifiedName())
+                     .append(".class), ");
+            } else if (column.isModel()) {
                 closeParens++;
                 value.append("mEllie.getModelRepository(")
                      .append(column.getDeserializedQualifiedName())
@@ -235,7 +381,7 @@ import static javax.lang.model.element.Modifier.STATIC;
             }
 
             value.append("cursor.").append(CURSOR_METHOD_MAP.get(column.getSerializedQualifiedName())).append("(");
-            value.append("cursor.getColumnIndex(\"").append(column.getColumnName()).append("\")");
+            value.append("columnIndexes[").append(columnIndex).append("]");
 
             for (int i = 0; i < closeParens; i++) {
                 value.append(")");
@@ -246,31 +392,188 @@ import static javax.lang.model.element.Modifier.STATIC;
             } else {
                 writer.emitStatement("entity.%s(%s)", column.getSetter().getSimpleName(), value.toString());
             }
+
+            columnIndex++;
+        }
+        writer.emitStatement("((Model) entity).setSnapshot(snapshot(entity))");
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeGetColumnIndexes(final JavaWriter writer, final Set<ColumnElement> columns) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod("int[]", "getColumnIndexes", PUBLIC, "final Cursor", "cursor");
+
+        writer.emitStatement("final String[] columnNames = cursor.getColumnNames()");
+        writer.emitStatement("ColumnIndexes columnIndexes = mColumnIndexes");
+
+        writer.beginControlFlow("if (columnIndexes == null || !columnIndexes.matches(columnNames))");
+        final StringBuilder indexes = new StringBuilder();
+        for (ColumnElement column : columns) {
+            if (indexes.length() > 0) {
+                indexes.append(", ");
+            }
+            indexes.append("cursor.getColumnIndex(\"").append(column.getColumnName()).append("\")");
         }
+        writer.emitStatement("columnIndexes = new ColumnIndexes(columnNames, new int[]{%s})", indexes.toString());
+        writer.emitStatement("mColumnIndexes = columnIndexes");
+        writer.endControlFlow();
+
+        writer.emitStatement("return columnIndexes.getIndexes()");
 
         writer.endMethod();
         writer.emitEmptyLine();
     }
 
-    private void writeCreateOrUpdate(final JavaWriter writer, final String modelSimpleName) throws IOException {
+    private void writeGetSignature(final JavaWriter writer, final Set<ColumnElement> columns) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod("long", "getSignature", PUBLIC, "final Cursor", "cursor", "final int[]", "columnIndexes");
+
+        writer.emitStatement("long signature = RowSignatures.SEED");
+        int columnIndex = 0;
+        for (ColumnElement column : columns) {
+            writer.emitStatement(
+                    "signature = RowSignatures.%s(signature, cursor, columnIndexes[%d])",
+                    SIGNATURE_METHOD_MAP.get(column.getSerializedQualifiedName()),
+                    columnIndex
+            );
+            columnIndex++;
+        }
+        writer.emitStatement("return signature");
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeFindReferences(final JavaWriter writer, final Set<ColumnElement> columns) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod("List<? extends Model>", "findReferences", PUBLIC, "final Cursor", "cursor", "final int[]", "columnIndexes");
+
+        boolean hasReferences = false;
+        int columnIndex = 0;
+        for (ColumnElement column : columns) {
+            if (column.isModel() && !column.isLazy()) {
+                if (!hasReferences) {
+                    writer.emitStatement("final List<Model> references = new ArrayList<>()");
+                    hasReferences = true;
+                }
+                writer.emitStatement(
+                        "references.addAll(mEllie.getModelRepository(%s.class).findAll(mEllie.getDistinctIds(cursor, columnIndexes[%d])))",
+                        column.getDeserializedQualifiedName(),
+                        columnIndex
+                );
+            }
+            columnIndex++;
+        }
+
+        if (hasReferences) {
+            writer.emitStatement("return references");
+        } else {
+            writer.emitStatement("return Collections.emptyList()");
+        }
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeUpsert(final JavaWriter writer, final String modelSimpleName, final String tableName, final Set<ColumnElement> columns)
+            throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(Long.class.getSimpleName(), "upsert", PUBLIC, "final " + modelSimpleName, "entity");
+
+        final ColumnElement keyColumn = getUpsertKeyColumn(columns);
+        writer.emitStatement(
+                "entity.setId(mEllie.upsert(this, entity, \"%s\", COLUMN_NAMES, %d, %s))",
+                tableName,
+                new ArrayList<>(columns).indexOf(keyColumn),
+                createSerializedValue(keyColumn)
+        );
+        writer.emitStatement("mEllie.onEntityWritten(entity, snapshot(entity))");
+        writer.emitStatement("mEllie.notifyTableChanged(%s.class)", modelSimpleName);
+        writer.emitStatement("return entity.getId()");
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeCreateOrUpdate(final JavaWriter writer, final String modelSimpleName, final Set<ColumnElement> columns) throws IOException {
         writer.emitAnnotation(Override.class);
         writer.beginMethod(Long.class.getSimpleName(), "createOrUpdate", PUBLIC, "final " + modelSimpleName, "entity");
 
-        writer.beginControlFlow("if (entity.getId() == null)");
-        writer.emitStatement("return create(entity)");
-        writer.nextControlFlow("else");
+        writer.beginControlFlow("if (((Model) entity).isPersisted())");
         writer.emitStatement("return update(entity)");
+        if (!getUpsertKeyColumn(columns).isUnique()) {
+            writer.nextControlFlow("else if (entity.getId() == null)");
+            writer.emitStatement("return create(entity)");
+        }
+        writer.nextControlFlow("else");
+        writer.emitStatement("return upsert(entity)");
         writer.endControlFlow();
 
         writer.endMethod();
         writer.emitEmptyLine();
     }
 
-    private void writeDelete(final JavaWriter writer, final String modelSimpleName, final String tableName) throws IOException {
+    private void writeCreateAll(final JavaWriter writer, final String modelSimpleName) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(void.class.getSimpleName(), "createAll", PUBLIC, "final Collection<" + modelSimpleName + ">", "entities");
+
+        writer.emitStatement("final Transaction transaction = mEllie.beginTransaction()");
+        writer.beginControlFlow("try");
+        writer.emitStatement("final SQLiteStatement statement = mDatabase.compileStatement(INSERT_SQL)");
+        writer.beginControlFlow("try");
+        writer.beginControlFlow("for (%s entity : entities)", modelSimpleName);
+        writer.emitStatement("bind(statement, entity)");
+        writer.emitStatement("entity.setId(statement.executeInsert())");
+        writer.emitStatement("mEllie.onEntityWritten(entity, snapshot(entity))");
+        writer.emitStatement("putEntity(entity)");
+        writer.endControlFlow();
+        writer.nextControlFlow("finally");
+        writer.emitStatement("statement.close()");
+        writer.endControlFlow();
+        writer.emitStatement("mEllie.notifyTableChanged(%s.class)", modelSimpleName);
+        writer.emitStatement("transaction.setSuccessful()");
+        writer.nextControlFlow("finally");
+        writer.emitStatement("transaction.end()");
+        writer.endControlFlow();
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeSaveAll(final JavaWriter writer, final String modelSimpleName) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(void.class.getSimpleName(), "saveAll", PUBLIC, "final Collection<" + modelSimpleName + ">", "entities");
+
+        writer.emitStatement("final Transaction transaction = mEllie.beginTransaction()");
+        writer.beginControlFlow("try");
+        writer.beginControlFlow("for (%s entity : entities)", modelSimpleName);
+        writer.emitStatement("createOrUpdate(entity)");
+        writer.emitStatement("putEntity(entity)");
+        writer.endControlFlow();
+        writer.emitStatement("transaction.setSuccessful()");
+        writer.nextControlFlow("finally");
+        writer.emitStatement("transaction.end()");
+        writer.endControlFlow();
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    private void writeDelete(final JavaWriter writer, final String modelSimpleName) throws IOException {
         writer.emitAnnotation(Override.class);
         writer.beginMethod(void.class.getSimpleName(), "delete", PUBLIC, "final " + modelSimpleName, "entity");
 
-        writer.emitStatement("mDatabase.delete(\"%s\", \"%s=?\", new String[]{entity.getId().toString()});", tableName, Model.COLUMN_ID);
+        writer.emitStatement("final SQLiteStatement statement = mDatabase.compileStatement(DELETE_SQL)");
+        writer.beginControlFlow("try");
+        writer.emitStatement("statement.bindLong(1, entity.getId())");
+        writer.emitStatement("statement.execute()");
+        writer.nextControlFlow("finally");
+        writer.emitStatement("statement.close()");
+        writer.endControlFlow();
+        writer.emitStatement("((Model) entity).clearSnapshot()");
+        writer.emitStatement("mEllie.notifyTableChanged(%s.class)", modelSimpleName);
 
         writer.endMethod();
         writer.emitEmptyLine();
@@ -281,7 +584,7 @@ import static javax.lang.model.element.Modifier.STATIC;
         writer.beginMethod(void.class.getSimpleName(), "putEntity", PUBLIC, "final " + modelSimpleName, "entity");
 
         writer.beginControlFlow("if (entity.getId() != null)");
-        writer.emitStatement("mCache.put(getEntityIdentifier(entity.getId()), entity)");
+        writer.emitStatement("mCache.put(entity.getId(), entity)");
         writer.endControlFlow();
 
         writer.endMethod();
@@ -292,7 +595,7 @@ import static javax.lang.model.element.Modifier.STATIC;
         writer.emitAnnotation(Override.class);
         writer.beginMethod(modelSimpleName, "getEntity", PUBLIC, "final long", "id");
 
-        writer.emitStatement("return mCache.get(getEntityIdentifier(id))");
+        writer.emitStatement("return mCache.get(id)");
 
         writer.endMethod();
         writer.emitEmptyLine();
@@ -303,7 +606,7 @@ import static javax.lang.model.element.Modifier.STATIC;
         writer.beginMethod(void.class.getSimpleName(), "removeEntity", PUBLIC, "final " + modelSimpleName, "entity");
 
         writer.beginControlFlow("if (entity.getId() != null)");
-        writer.emitStatement("mCache.remove(getEntityIdentifier(entity.getId()))");
+        writer.emitStatement("mCache.remove(entity.getId())");
         writer.endControlFlow();
 
         writer.endMethod();
@@ -326,60 +629,231 @@ import static javax.lang.model.element.Modifier.STATIC;
         writer.emitEmptyLine();
     }
 
-    private void writeGetEntityIdentifier(final JavaWriter writer, final String modelSimpleName) throws IOException {
-        writer.beginMethod(String.class.getSimpleName(), "getEntityIdentifier", PRIVATE_STATIC, "final long", "id");
+    private void writeBind(final JavaWriter writer, final String modelSimpleName, final Set<ColumnElement> columns) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(
+                void.class.getSimpleName(),
+                "bind",
+                PUBLIC,
+                "final " + SQLiteStatement.class.getSimpleName(), "statement",
+                "final " + modelSimpleName, "entity"
+        );
 
-        writer.emitStatement("return \"%s@\" + id", modelSimpleName);
+        int index = 1;
+        for (ColumnElement column : columns) {
+            writeBindColumn(writer, column, String.valueOf(index), "value" + index);
+            index++;
+        }
 
         writer.endMethod();
         writer.emitEmptyLine();
     }
 
-    private void writeCreateContentValues(final JavaWriter writer, final String modelQualifiedName, final Set<ColumnElement> columns) throws IOException {
-        writer.beginMethod(ContentValues.class.getSimpleName(), "createContentValues", PUBLIC, "final " + modelQualifiedName, "entity");
-        writer.emitStatement("ContentValues values = new ContentValues()");
+    private void writeBindColumns(final JavaWriter writer, final String modelSimpleName, final Set<ColumnElement> columns) throws IOException {
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(
+                "int",
+                "bind",
+                PUBLIC,
+                "final " + SQLiteStatement.class.getSimpleName(), "statement",
+                "final " + modelSimpleName, "entity",
+                "final long", "columns"
+        );
 
-        final StringBuilder value = new StringBuilder();
+        writer.emitStatement("int index = 0");
+        int columnIndex = 0;
         for (ColumnElement column : columns) {
-            value.setLength(0);
-            int closeParens = 0;
+            writer.beginControlFlow("if ((columns & (" + createColumnBit(columnIndex) + ")) != 0)");
+            writer.emitStatement("index++");
+            writeBindColumn(writer, column, "index", "value" + (columnIndex + 1));
+            writer.endControlFlow();
+            columnIndex++;
+        }
+        writer.emitStatement("return index");
 
-            if (!column.isModel() && column.requiresTypeAdapter()) {
-                closeParens++;
-                value.append("(").append(column.getSerializedSimpleName())
-                     .append(") mEllie.getTypeAdapter(")
-                     .append(column.getDeserializedSimpleName())
-                     .append(".class).serialize(");
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    /**
+     * Writes the statements that bind the value of given column of {@code entity} at given parameter index, using
+     * the typed bind method of the column.
+     */
+    private void writeBindColumn(final JavaWriter writer, final ColumnElement column, final String index, final String valueName)
+            throws IOException {
+        final String bindMethod = STATEMENT_METHOD_MAP.get(column.getSerializedQualifiedName());
+        if (isPrimitiveValue(column)) {
+            writer.emitStatement("statement.%s(%s, %s)", bindMethod, index, createSerializedValue(column));
+        } else {
+            writer.emitStatement("final %s %s = %s", column.getSerializedSimpleName(), valueName, createSerializedValue(column));
+            writer.beginControlFlow("if (" + valueName + " == null)");
+            writer.emitStatement("statement.bindNull(%s)", index);
+            writer.nextControlFlow("else");
+            writer.emitStatement("statement.%s(%s, %s)", bindMethod, index, valueName);
+            writer.endControlFlow();
+        }
+    }
+
+    /**
+     * Writes a method that copies the values of an entity's columns as stored in the database into a Snapshot, used
+     * to find the columns that changed since the entity was loaded or written.
+     */
+    private void writeSnapshot(final JavaWriter writer, final String modelSimpleName, final Set<ColumnElement> columns) throws IOException {
+        writer.beginMethod("Snapshot", "snapshot", EnumSet.of(Modifier.PRIVATE), "final " + modelSimpleName, "entity");
+
+        writer.emitStatement("final Snapshot snapshot = new Snapshot()");
+        for (ColumnElement column : columns) {
+            writer.emitStatement("snapshot.%s = %s", column.getFieldName(), createSerializedValue(column));
+        }
+        writer.emitStatement("return snapshot");
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    /**
+     * Writes a method that returns the columns whose values differ between two snapshots, as a bit mask for
+     * {@link ModelRepository#bind(SQLiteStatement, Model, long)}, or -1 if the previous snapshot is unknown.
+     */
+    private void writeGetChangedColumns(final JavaWriter writer, final Set<ColumnElement> columns) throws IOException {
+        writer.beginMethod("long", "getChangedColumns", EnumSet.of(Modifier.PRIVATE), "final Snapshot", "previous", "final Snapshot", "current");
+
+        writer.beginControlFlow("if (previous == null)");
+        writer.emitStatement("return -1L");
+        writer.endControlFlow();
+        writer.emitEmptyLine();
+
+        writer.emitStatement("long changedColumns = 0");
+        int columnIndex = 0;
+        for (ColumnElement column : columns) {
+            final String previous = "previous." + column.getFieldName();
+            final String current = "current." + column.getFieldName();
+
+            final String condition;
+            if (isPrimitiveValue(column) && (column.getTypeName().equals("double") || column.getTypeName().equals("float"))) {
+                condition = String.format("%s.compare(%s, %s) != 0", column.getSerializedSimpleName(), previous, current);
+            } else if (isPrimitiveValue(column)) {
+                condition = String.format("%s != %s", previous, current);
+            } else {
+                condition = String.format("%1$s == null ? %2$s != null : !%1$s.equals(%2$s)", previous, current);
             }
 
+            writer.beginControlFlow("if (" + condition + ")");
+            writer.emitStatement("changedColumns |= %s", createColumnBit(columnIndex));
+            writer.endControlFlow();
+            columnIndex++;
+        }
+        writer.emitStatement("return changedColumns");
+
+        writer.endMethod();
+        writer.emitEmptyLine();
+    }
+
+    /**
+     * Writes the type that holds the values of an entity's columns as stored in the database. Primitive columns are
+     * kept as primitives, so taking a snapshot does not box them.
+     */
+    private void writeSnapshotType(final JavaWriter writer, final Set<ColumnElement> columns) throws IOException {
+        writer.beginType("Snapshot", "class", PRIVATE_STATIC);
+        writer.emitEmptyLine();
+
+        for (ColumnElement column : columns) {
+            final String type = isPrimitiveValue(column) ? column.getTypeName() : column.getSerializedSimpleName();
+            writer.emitField(type, column.getFieldName());
+        }
+
+        writer.endType();
+    }
+
+    /**
+     * Returns whether the value of given column is stored as a primitive, rather than as a possibly null object.
+     */
+    private boolean isPrimitiveValue(final ColumnElement column) {
+        return column.isPrimitive() && !column.requiresTypeAdapter();
+    }
+
+    /**
+     * Creates an expression for the bit of the column at given index in a column mask. Columns from index 63 on share
+     * the last bit.
+     */
+    private String createColumnBit(final int columnIndex) {
+        return "1L << " + Math.min(columnIndex, Long.SIZE - 1);
+    }
+
+    /**
+     * Creates an expression for the value of given column of {@code entity}, as stored in the database.
+     */
+    private String createSerializedValue(final ColumnElement column) {
+        final StringBuilder value = new StringBuilder();
+        int closeParens = 0;
+
+        if (!column.isModel() && column.requiresTypeAdapter()) {
+            closeParens++;
+            value.append("(").append(column.getSerializedSimpleName())
+                 .append(") mEllie.getTypeAdapter(")
+                 .append(column.getDeserializedSimpleName())
+                 .append(".class).serialize(");
+        }
+
+        if (column.getGetter() == null) {
+            value.append("entity.").append(column.getFieldName());
+        } else {
+            value.append("entity.").append(column.getGetter());
+        }
+
+        if (column.isModel()) {
+            value.append(" != null ? ");
+            value.append("entity.");
             if (column.getGetter() == null) {
-                value.append("entity.").append(column.getFieldName());
+                value.append(column.getFieldName());
             } else {
-                value.append("entity.").append(column.getGetter());
+                value.append(column.getGetter());
             }
+            value.append(".getId()");
+            value.append(" : null");
+        }
 
-            if (column.isModel()) {
-                value.append(" != null ? ");
-                value.append("entity.");
-                if (column.getGetter() == null) {
-                    value.append(column.getFieldName());
-                } else {
-                    value.append(column.getGetter());
-                }
-                value.append(".getId()");
-                value.append(" : null");
-            }
+        for (int i = 0; i < closeParens; i++) {
+            value.append(")");
+        }
 
-            for (int i = 0; i < closeParens; i++) {
-                value.append(")");
+        return value.toString();
+    }
+
+    /**
+     * Returns the column that identifies a row for upserts: the first unique column, or the primary key if there is
+     * none.
+     */
+    private ColumnElement getUpsertKeyColumn(final Set<ColumnElement> columns) {
+        ColumnElement primaryKey = null;
+        for (ColumnElement column : columns) {
+            if (column.isUnique()) {
+                return column;
+            }
+            if (column.isPrimaryKey() && primaryKey == null) {
+                primaryKey = column;
             }
+        }
+        return primaryKey;
+    }
 
-            writer.emitStatement("values.put(\"" + column.getColumnName() + "\", " + value + ")");
+    private String createInsertSql(final String tableName, final Set<ColumnElement> columns) {
+        final StringBuilder names = new StringBuilder();
+        final StringBuilder placeholders = new StringBuilder();
+        for (ColumnElement column : columns) {
+            if (names.length() > 0) {
+                names.append(", ");
+                placeholders.append(", ");
+            }
+            names.append(column.getColumnName());
+            placeholders.append("?");
         }
 
-        writer.emitStatement("return values");
-        writer.endMethod();
-        writer.emitEmptyLine();
+        return "INSERT INTO " + tableName + " (" + names + ") VALUES (" + placeholders + ")";
+    }
+
+    private String createDeleteSql(final String tableName) {
+        return "DELETE FROM " + tableName + " WHERE " + Model.COLUMN_ID + "=?";
     }
 
     private String createSimpleName(final TypeElement element) {
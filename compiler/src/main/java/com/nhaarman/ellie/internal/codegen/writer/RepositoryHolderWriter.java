@@ -22,6 +22,7 @@ import android.database.sqlite.SQLiteDatabase;
 import com.google.common.collect.Sets;
 import com.nhaarman.ellie.Ellie;
 import com.nhaarman.ellie.ModelRepository;
+import com.nhaarman.ellie.annotation.Cache;
 import com.nhaarman.ellie.internal.RepositoryHolder;
 import com.nhaarman.ellie.internal.codegen.Registry;
 import com.nhaarman.ellie.internal.codegen.element.ModelRepositoryElement;
@@ -37,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
@@ -51,6 +53,8 @@ public class RepositoryHolderWriter implements SourceWriter<TypeElement> {
 
     private static final Set<Modifier> PUBLIC_FINAL = EnumSet.of(PUBLIC, FINAL);
 
+    private static final String CACHE_TYPE = Ellie.class.getSimpleName() + '.' + Ellie.CacheType.class.getSimpleName();
+
     private final Registry mRegistry;
 
     public RepositoryHolderWriter(final Registry registry) {
@@ -98,6 +102,12 @@ public class RepositoryHolderWriter implements SourceWriter<TypeElement> {
                 ArrayList.class.getName()
         );
 
+        for (ModelRepositoryElement modelRepositoryElement : mRegistry.getModelRepositories()) {
+            Cache cache = modelRepositoryElement.getCache();
+            if (cache != null && cache.ttl() > 0) {
+                imports.add(TimeUnit.class.getName());
+            }
+        }
 
         writer.emitImports(imports);
         writer.emitEmptyLine();
@@ -118,10 +128,11 @@ public class RepositoryHolderWriter implements SourceWriter<TypeElement> {
                 EnumSet.of(PUBLIC),
                 "final " + Ellie.class.getSimpleName(), "ellie",
                 "final " + SQLiteDatabase.class.getSimpleName(), "database",
-                "final int", "cacheSize"
+                "final int", "cacheSize",
+                "final " + CACHE_TYPE, "cacheType"
         );
 
-        writer.emitStatement("createModelRepositories(ellie, database, cacheSize)");
+        writer.emitStatement("createModelRepositories(ellie, database, cacheSize, cacheType)");
 
         writer.endConstructor();
         writer.emitEmptyLine();
@@ -134,14 +145,17 @@ public class RepositoryHolderWriter implements SourceWriter<TypeElement> {
                 PRIVATE_FINAL,
                 "final " + Ellie.class.getSimpleName(), "ellie",
                 "final " + SQLiteDatabase.class.getSimpleName(), "database",
-                "final int", "cacheSize"
+                "final int", "cacheSize",
+                "final " + CACHE_TYPE, "cacheType"
         );
 
         for (ModelRepositoryElement modelRepositoryElement : mRegistry.getModelRepositories()) {
             writer.emitStatement(
-                    "mModelRepositories.put(%s.class, new %s(ellie, database, cacheSize))",
+                    "mModelRepositories.put(%s.class, new %s(ellie, database, new TransactionalLongCache<%s>(ellie, %s)))",
+                    modelRepositoryElement.getModelQualifiedName(),
+                    modelRepositoryElement.getQualifiedName(),
                     modelRepositoryElement.getModelQualifiedName(),
-                    modelRepositoryElement.getQualifiedName()
+                    createCacheExpression(modelRepositoryElement)
             );
         }
 
@@ -149,6 +163,34 @@ public class RepositoryHolderWriter implements SourceWriter<TypeElement> {
         writer.emitEmptyLine();
     }
 
+    private String createCacheExpression(final ModelRepositoryElement modelRepositoryElement) {
+        Cache cache = modelRepositoryElement.getCache();
+        if (cache == null) {
+            return String.format("cacheType.<%s>newCache(cacheSize)", modelRepositoryElement.getModelQualifiedName());
+        }
+
+        if (cache.ttl() > 0) {
+            return String.format(
+                    "%s.%s.<%s>newCache(%d, %dL, %s.%s)",
+                    CACHE_TYPE,
+                    cache.type().name(),
+                    modelRepositoryElement.getModelQualifiedName(),
+                    cache.size(),
+                    cache.ttl(),
+                    TimeUnit.class.getSimpleName(),
+                    cache.ttlUnit().name()
+            );
+        }
+
+        return String.format(
+                "%s.%s.<%s>newCache(%d)",
+                CACHE_TYPE,
+                cache.type().name(),
+                modelRepositoryElement.getModelQualifiedName(),
+                cache.size()
+        );
+    }
+
     private void writeGetModelRepository(final JavaWriter writer) throws IOException {
         writer.emitAnnotation(Override.class);
         writer.beginMethod(
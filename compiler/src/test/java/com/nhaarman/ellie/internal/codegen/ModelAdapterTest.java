@@ -178,6 +178,29 @@ public class ModelAdapterTest {
               .withErrorContaining(Errors.COLUMN_DUPLICATE_ERROR);
     }
 
+    @Test
+    public void byteObjectArrayColumnsAreRejected() {
+        JavaFileObject source = JavaFileObjects.forSourceString(
+                "com.nhaarman.ellie.test.Note",
+                Joiner.on('\n').join(
+                        "package com.nhaarman.ellie.test;",
+                        "import com.nhaarman.ellie.Model;",
+                        "import com.nhaarman.ellie.annotation.Column;",
+                        "import com.nhaarman.ellie.annotation.Table;",
+                        "@Table(\"notes\")",
+                        "public class Note extends Model {",
+                        "	public static final String DATA = \"data\";",
+                        "	@Column(DATA) public Byte[] data;",
+                        "}"
+                )
+        );
+
+        ASSERT.about(javaSource()).that(source)
+              .processedWith(ellieProcessors())
+              .failsToCompile()
+              .withErrorContaining(Errors.COLUMN_BYTE_ARRAY_ERROR);
+    }
+
     @Test
     public void getterForHasColumn() {
         JavaFileObject source = JavaFileObjects.forSourceString(
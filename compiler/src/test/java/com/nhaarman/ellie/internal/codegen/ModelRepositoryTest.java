@@ -21,9 +21,12 @@ import com.google.testing.compile.JavaFileObjects;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import javax.tools.JavaFileObject;
 
 import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
+import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 import static com.nhaarman.ellie.internal.ProcessorTestUtilities.ellieProcessors;
 import static org.truth0.Truth.ASSERT;
 
@@ -58,87 +61,216 @@ public class ModelRepositoryTest {
                 "com.nhaarman.ellie/Note$$Repository",
                 "package com.nhaarman.ellie;",
                 "",
-                "import android.content.ContentValues;",
                 "import android.database.Cursor;",
                 "import android.database.sqlite.SQLiteDatabase;",
+                "import android.database.sqlite.SQLiteStatement;",
                 "import com.nhaarman.ellie.Ellie;",
                 "import com.nhaarman.ellie.ModelRepository;",
-                "import com.nhaarman.ellie.query.Select;",
                 "import com.nhaarman.ellie.test.Note;",
-                "import com.nhaarman.ellie.util.LruCache;",
+                "import com.nhaarman.ellie.util.ColumnIndexes;",
+                "import com.nhaarman.ellie.util.LongCache;",
+                "import com.nhaarman.ellie.util.RowSignatures;",
                 "import java.lang.Long;",
+                "import java.util.Collection;",
+                "import java.util.Collections;",
                 "import java.util.Date;",
+                "import java.util.List;",
                 "",
                 "public final class Note$$Repository",
                 "    implements ModelRepository<Note> {",
                 "",
+                "    private static final String[] COLUMN_NAMES = {\"_id\", \"title\", \"body\", \"date\"};",
+                "    private static final String INSERT_SQL = \"INSERT INTO notes (_id, title, body, date) VALUES (?, ?, ?, ?)\";",
+                "    private static final String DELETE_SQL = \"DELETE FROM notes WHERE _id=?\";",
                 "    private final Ellie mEllie;",
                 "    private final SQLiteDatabase mDatabase;",
-                "    private final LruCache<String, Note> mCache;",
+                "    private final LongCache<Note> mCache;",
+                "    private volatile ColumnIndexes mColumnIndexes;",
                 "",
-                "    public Note$$Repository(final Ellie ellie, final SQLiteDatabase database, final int cacheSize) {",
+                "    public Note$$Repository(final Ellie ellie, final SQLiteDatabase database, final LongCache<Note> cache) {",
                 "        mEllie = ellie;",
                 "        mDatabase = database;",
-                "        mCache = new LruCache<>(cacheSize);",
+                "        mCache = cache;",
+                "    }",
+                "",
+                "    @Override",
+                "    public final Note newInstance() {",
+                "        return new Note();",
                 "    }",
                 "",
                 "    @Override",
                 "    public final Note find(final long id) {",
-                "        return new Select().from(Note.class).where(\"_id=?\", id).fetchSingle();",
+                "        final Cursor cursor = mEllie.rawQuery(\"SELECT * FROM notes WHERE _id=?\", \"notes\", id);",
+                "        try {",
+                "            if (!cursor.moveToFirst()) {",
+                "                return null;",
+                "            }",
+                "            Note entity = getEntity(id);",
+                "            if (entity == null) {",
+                "                entity = newInstance();",
+                "            }",
+                "            load(entity, cursor);",
+                "            putEntity(entity);",
+                "            return entity;",
+                "        } finally {",
+                "            cursor.close();",
+                "        }",
+                "    }",
+                "",
+                "    @Override",
+                "    public final List<Note> findAll(final long[] ids) {",
+                "        return mEllie.findAll(this, \"notes\", ids);",
                 "    }",
                 "",
                 "    @Override",
                 "    public final Long create(final Note entity) {",
-                "        ContentValues values = createContentValues(entity);",
-                "        entity.setId(mDatabase.insert(\"notes\", null, values));",
+                "        final SQLiteStatement statement = mDatabase.compileStatement(INSERT_SQL);",
+                "        try {",
+                "            bind(statement, entity);",
+                "            entity.setId(statement.executeInsert());",
+                "        } finally {",
+                "            statement.close();",
+                "        }",
+                "        mEllie.onEntityWritten(entity, snapshot(entity));",
+                "        mEllie.notifyTableChanged(Note.class);",
                 "        return entity.getId();",
                 "    }",
                 "",
                 "    @Override",
                 "    public final Long update(final Note entity) {",
-                "        ContentValues values = createContentValues(entity);",
-                "        mDatabase.update(\"notes\", values, Model.COLUMN_ID + \"=?\", new String[]{entity.getId().toString()});",
+                "        final Snapshot snapshot = snapshot(entity);",
+                "        final long changedColumns = getChangedColumns((Snapshot) ((Model) entity).getSnapshot(), snapshot);",
+                "        if (mEllie.updateColumns(this, entity, \"notes\", COLUMN_NAMES, changedColumns)) {",
+                "            mEllie.onEntityWritten(entity, snapshot);",
+                "            mEllie.notifyTableChanged(Note.class);",
+                "        }",
                 "        return entity.getId();",
                 "    }",
                 "",
                 "    @Override",
                 "    public final void load(final Note entity, final Cursor cursor) {",
-                "        entity.setId(cursor.getLong(cursor.getColumnIndex(\"_id\")));",
-                "        entity.setTitle(cursor.getString(cursor.getColumnIndex(\"title\")));",
-                "        entity.body = cursor.getString(cursor.getColumnIndex(\"body\"));",
-                "        entity.date = mEllie.getTypeAdapter(Date.class).deserialize(cursor.getLong(cursor.getColumnIndex(\"date\")));",
+                "        load(entity, cursor, getColumnIndexes(cursor));",
+                "    }",
+                "",
+                "    @Override",
+                "    public final void load(final Note entity, final Cursor cursor, final int[] columnIndexes) {",
+                "        entity.setId(cursor.getLong(columnIndexes[0]));",
+                "        entity.setTitle(cursor.getString(columnIndexes[1]));",
+                "        entity.body = cursor.getString(columnIndexes[2]);",
+                "        entity.date = mEllie.getTypeAdapter(Date.class).deserialize(cursor.getLong(columnIndexes[3]));",
+                "        ((Model) entity).setSnapshot(snapshot(entity));",
+                "    }",
+                "",
+                "    @Override",
+                "    public final int[] getColumnIndexes(final Cursor cursor) {",
+                "        final String[] columnNames = cursor.getColumnNames();",
+                "        ColumnIndexes columnIndexes = mColumnIndexes;",
+                "        if (columnIndexes == null || !columnIndexes.matches(columnNames)) {",
+                "            columnIndexes = new ColumnIndexes(columnNames, new int[]{cursor.getColumnIndex(\"_id\"), cursor.getColumnIndex(\"title\"), cursor.getColumnIndex(\"body\"), cursor.getColumnIndex(\"date\")});",
+                "            mColumnIndexes = columnIndexes;",
+                "        }",
+                "        return columnIndexes.getIndexes();",
+                "    }",
+                "",
+                "    @Override",
+                "    public final long getSignature(final Cursor cursor, final int[] columnIndexes) {",
+                "        long signature = RowSignatures.SEED;",
+                "        signature = RowSignatures.mixLong(signature, cursor, columnIndexes[0]);",
+                "        signature = RowSignatures.mixString(signature, cursor, columnIndexes[1]);",
+                "        signature = RowSignatures.mixString(signature, cursor, columnIndexes[2]);",
+                "        signature = RowSignatures.mixLong(signature, cursor, columnIndexes[3]);",
+                "        return signature;",
+                "    }",
+                "",
+                "    @Override",
+                "    public final List<? extends Model> findReferences(final Cursor cursor, final int[] columnIndexes) {",
+                "        return Collections.emptyList();",
+                "    }",
+                "",
+                "    @Override",
+                "    public final Long upsert(final Note entity) {",
+                "        entity.setId(mEllie.upsert(this, entity, \"notes\", COLUMN_NAMES, 0, entity.getId()));",
+                "        mEllie.onEntityWritten(entity, snapshot(entity));",
+                "        mEllie.notifyTableChanged(Note.class);",
+                "        return entity.getId();",
                 "    }",
                 "",
                 "    @Override",
                 "    public final Long createOrUpdate(final Note entity) {",
-                "        if (entity.getId() == null) {",
+                "        if (((Model) entity).isPersisted()) {",
+                "            return update(entity);",
+                "        } else if (entity.getId() == null) {",
                 "            return create(entity);",
                 "        } else {",
-                "            return update(entity);",
+                "            return upsert(entity);",
+                "        }",
+                "    }",
+                "",
+                "    @Override",
+                "    public final void createAll(final Collection<Note> entities) {",
+                "        final Transaction transaction = mEllie.beginTransaction();",
+                "        try {",
+                "            final SQLiteStatement statement = mDatabase.compileStatement(INSERT_SQL);",
+                "            try {",
+                "                for (Note entity : entities) {",
+                "                    bind(statement, entity);",
+                "                    entity.setId(statement.executeInsert());",
+                "                    mEllie.onEntityWritten(entity, snapshot(entity));",
+                "                    putEntity(entity);",
+                "                }",
+                "            } finally {",
+                "                statement.close();",
+                "            }",
+                "            mEllie.notifyTableChanged(Note.class);",
+                "            transaction.setSuccessful();",
+                "        } finally {",
+                "            transaction.end();",
+                "        }",
+                "    }",
+                "",
+                "    @Override",
+                "    public final void saveAll(final Collection<Note> entities) {",
+                "        final Transaction transaction = mEllie.beginTransaction();",
+                "        try {",
+                "            for (Note entity : entities) {",
+                "                createOrUpdate(entity);",
+                "                putEntity(entity);",
+                "            }",
+                "            transaction.setSuccessful();",
+                "        } finally {",
+                "            transaction.end();",
                 "        }",
                 "    }",
                 "",
                 "    @Override",
                 "    public final void delete(final Note entity) {",
-                "        mDatabase.delete(\"notes\", \"_id=?\", new String[]{entity.getId().toString()});;",
+                "        final SQLiteStatement statement = mDatabase.compileStatement(DELETE_SQL);",
+                "        try {",
+                "            statement.bindLong(1, entity.getId());",
+                "            statement.execute();",
+                "        } finally {",
+                "            statement.close();",
+                "        }",
+                "        ((Model) entity).clearSnapshot();",
+                "        mEllie.notifyTableChanged(Note.class);",
                 "    }",
                 "",
                 "    @Override",
                 "    public final void putEntity(final Note entity) {",
                 "        if (entity.getId() != null) {",
-                "            mCache.put(getEntityIdentifier(entity.getId()), entity);",
+                "            mCache.put(entity.getId(), entity);",
                 "        }",
                 "    }",
                 "",
                 "    @Override",
                 "    public final Note getEntity(final long id) {",
-                "        return mCache.get(getEntityIdentifier(id));",
+                "        return mCache.get(id);",
                 "    }",
                 "",
                 "    @Override",
                 "    public final void removeEntity(final Note entity) {",
                 "        if (entity.getId() != null) {",
-                "            mCache.remove(getEntityIdentifier(entity.getId()));",
+                "            mCache.remove(entity.getId());",
                 "        }",
                 "    }",
                 "",
@@ -151,19 +283,113 @@ public class ModelRepositoryTest {
                 "        return entity;",
                 "    }",
                 "",
-                "    public final ContentValues createContentValues(final Note entity) {",
-                "        ContentValues values = new ContentValues();",
-                "        values.put(\"_id\", entity.getId());",
-                "        values.put(\"title\", entity.getTitle());",
-                "        values.put(\"body\", entity.body);",
-                "        values.put(\"date\", (Long) mEllie.getTypeAdapter(Date.class).serialize(entity.date));",
-                "        return values;",
+                "    @Override",
+                "    public final void bind(final SQLiteStatement statement, final Note entity) {",
+                "        final Long value1 = entity.getId();",
+                "        if (value1 == null) {",
+                "            statement.bindNull(1);",
+                "        } else {",
+                "            statement.bindLong(1, value1);",
+                "        }",
+                "        final String value2 = entity.getTitle();",
+                "        if (value2 == null) {",
+                "            statement.bindNull(2);",
+                "        } else {",
+                "            statement.bindString(2, value2);",
+                "        }",
+                "        final String value3 = entity.body;",
+                "        if (value3 == null) {",
+                "            statement.bindNull(3);",
+                "        } else {",
+                "            statement.bindString(3, value3);",
+                "        }",
+                "        final Long value4 = (Long) mEllie.getTypeAdapter(Date.class).serialize(entity.date);",
+                "        if (value4 == null) {",
+                "            statement.bindNull(4);",
+                "        } else {",
+                "            statement.bindLong(4, value4);",
+                "        }",
+                "    }",
+                "",
+                "    @Override",
+                "    public final int bind(final SQLiteStatement statement, final Note entity, final long columns) {",
+                "        int index = 0;",
+                "        if ((columns & (1L << 0)) != 0) {",
+                "            index++;",
+                "            final Long value1 = entity.getId();",
+                "            if (value1 == null) {",
+                "                statement.bindNull(index);",
+                "            } else {",
+                "                statement.bindLong(index, value1);",
+                "            }",
+                "        }",
+                "        if ((columns & (1L << 1)) != 0) {",
+                "            index++;",
+                "            final String value2 = entity.getTitle();",
+                "            if (value2 == null) {",
+                "                statement.bindNull(index);",
+                "            } else {",
+                "                statement.bindString(index, value2);",
+                "            }",
+                "        }",
+                "        if ((columns & (1L << 2)) != 0) {",
+                "            index++;",
+                "            final String value3 = entity.body;",
+                "            if (value3 == null) {",
+                "                statement.bindNull(index);",
+                "            } else {",
+                "                statement.bindString(index, value3);",
+                "            }",
+                "        }",
+                "        if ((columns & (1L << 3)) != 0) {",
+                "            index++;",
+                "            final Long value4 = (Long) mEllie.getTypeAdapter(Date.class).serialize(entity.date);",
+                "            if (value4 == null) {",
+                "                statement.bindNull(index);",
+                "            } else {",
+                "                statement.bindLong(index, value4);",
+                "            }",
+                "        }",
+                "        return index;",
+                "    }",
+                "",
+                "    private Snapshot snapshot(final Note entity) {",
+                "        final Snapshot snapshot = new Snapshot();",
+                "        snapshot.mId = entity.getId();",
+                "        snapshot.title = entity.getTitle();",
+                "        snapshot.body = entity.body;",
+                "        snapshot.date = (Long) mEllie.getTypeAdapter(Date.class).serialize(entity.date);",
+                "        return snapshot;",
                 "    }",
                 "",
-                "    private static String getEntityIdentifier(final long id) {",
-                "        return \"Note@\" + id;",
+                "    private long getChangedColumns(final Snapshot previous, final Snapshot current) {",
+                "        if (previous == null) {",
+                "            return -1L;",
+                "        }",
+                "",
+                "        long changedColumns = 0;",
+                "        if (previous.mId == null ? current.mId != null : !previous.mId.equals(current.mId)) {",
+                "            changedColumns |= 1L << 0;",
+                "        }",
+                "        if (previous.title == null ? current.title != null : !previous.title.equals(current.title)) {",
+                "            changedColumns |= 1L << 1;",
+                "        }",
+                "        if (previous.body == null ? current.body != null : !previous.body.equals(current.body)) {",
+                "            changedColumns |= 1L << 2;",
+                "        }",
+                "        if (previous.date == null ? current.date != null : !previous.date.equals(current.date)) {",
+                "            changedColumns |= 1L << 3;",
+                "        }",
+                "        return changedColumns;",
                 "    }",
                 "",
+                "    private static final class Snapshot {",
+                "",
+                "        Long mId;",
+                "        String title;",
+                "        String body;",
+                "        Long date;",
+                "    }",
                 "}"
         );
 
@@ -174,4 +400,138 @@ public class ModelRepositoryTest {
               .generatesSources(expectedSource);
     }
 
+    @Test
+    public void modelsAreNotAbstract() {
+        JavaFileObject source = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Note",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "@Table(\"notes\")",
+                "public abstract class Note extends Model {",
+                "	@Column(\"title\") public String title;",
+                "}"
+        );
+
+        ASSERT.about(javaSource()).that(source)
+              .processedWith(ellieProcessors())
+              .failsToCompile()
+              .withErrorContaining("@Table classes cannot be abstract.");
+    }
+
+    @Test
+    public void modelsHavePublicNoArgumentConstructor() {
+        JavaFileObject source = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Note",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "@Table(\"notes\")",
+                "public class Note extends Model {",
+                "	@Column(\"title\") public String title;",
+                "	public Note(String title) { this.title = title; }",
+                "}"
+        );
+
+        ASSERT.about(javaSource()).that(source)
+              .processedWith(ellieProcessors())
+              .failsToCompile()
+              .withErrorContaining("@Table classes must have a public no-argument constructor.");
+    }
+
+    @Test
+    public void cacheSizeIsPositive() {
+        JavaFileObject source = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Note",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Cache;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "@Table(\"notes\")",
+                "@Cache(size = 0)",
+                "public class Note extends Model {",
+                "	@Column(\"title\") public String title;",
+                "}"
+        );
+
+        ASSERT.about(javaSource()).that(source)
+              .processedWith(ellieProcessors())
+              .failsToCompile()
+              .withErrorContaining("@Cache size must be positive.");
+    }
+
+    @Test
+    public void uniqueColumnsAreUpsertKeys() {
+        JavaFileObject source = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Tag",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "import com.nhaarman.ellie.annotation.Unique;",
+                "@Table(\"tags\")",
+                "public class Tag extends Model {",
+                "	@Column(\"name\") @Unique public String name;",
+                "}"
+        );
+
+        ASSERT.about(javaSource()).that(source)
+              .processedWith(ellieProcessors())
+              .compilesWithoutError();
+    }
+
+    @Test
+    public void lazyColumnsCompile() {
+        JavaFileObject note = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Note",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "@Table(\"notes\")",
+                "public class Note extends Model {",
+                "	@Column(\"title\") public String title;",
+                "}"
+        );
+        JavaFileObject comment = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Comment",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Lazy;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "@Table(\"comments\")",
+                "public class Comment extends Model {",
+                "	@Column(\"note\") public Lazy<Note> note;",
+                "}"
+        );
+
+        ASSERT.about(javaSources()).that(Arrays.asList(note, comment))
+              .processedWith(ellieProcessors())
+              .compilesWithoutError();
+    }
+
+    @Test
+    public void lazyColumnsDeclareModelType() {
+        JavaFileObject source = JavaFileObjects.forSourceLines(
+                "com.nhaarman.ellie.test.Note",
+                "package com.nhaarman.ellie.test;",
+                "import com.nhaarman.ellie.Lazy;",
+                "import com.nhaarman.ellie.Model;",
+                "import com.nhaarman.ellie.annotation.Column;",
+                "import com.nhaarman.ellie.annotation.Table;",
+                "@Table(\"notes\")",
+                "public class Note extends Model {",
+                "	@Column(\"parent\") public Lazy parent;",
+                "}"
+        );
+
+        ASSERT.about(javaSource()).that(source)
+              .processedWith(ellieProcessors())
+              .failsToCompile()
+              .withErrorContaining("Lazy columns must declare the referenced model type.");
+    }
 }
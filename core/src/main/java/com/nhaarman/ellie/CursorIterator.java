@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie;
+
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows of a cursor, loading one entity per row as it is requested. Unlike
+ * {@link Ellie#processCursor(Class, Cursor)}, only the current entity is held, so large results can be processed in
+ * constant memory.
+ * <p/>
+ * The cursor is closed once the last row was returned, or when {@link #close()} is called. Always close an iterator
+ * that is not iterated to the end. A CursorIterator can only be iterated once.
+ *
+ * @param <T> The Model type.
+ */
+public final class CursorIterator<T extends Model> implements Iterator<T>, Iterable<T>, Closeable {
+
+    private final ModelRepository<T> mRepository;
+
+    private final Cursor mCursor;
+
+    private final boolean mUseCache;
+
+    private int[] mColumnIndexes;
+
+    private int mIdColumnIndex;
+
+    private boolean mIterated;
+
+    CursorIterator(final ModelRepository<T> repository, final Cursor cursor, final boolean useCache) {
+        mRepository = repository;
+        mCursor = cursor;
+        mUseCache = useCache;
+    }
+
+    /**
+     * Returns this iterator.
+     *
+     * @throws IllegalStateException if this method was called before.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        if (mIterated) {
+            throw new IllegalStateException("A CursorIterator can only be iterated once.");
+        }
+
+        mIterated = true;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mCursor.isClosed()) {
+            return false;
+        }
+
+        if (mCursor.getPosition() >= mCursor.getCount() - 1) {
+            close();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves to the next row and loads its entity. If the iterator uses the cache, the cached instance for the row is
+     * reused and the loaded entity is cached. Otherwise, a new instance is returned for every row.
+     */
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        mCursor.moveToNext();
+        if (mColumnIndexes == null) {
+            mColumnIndexes = mRepository.getColumnIndexes(mCursor);
+            mIdColumnIndex = mCursor.getColumnIndex(Model.COLUMN_ID);
+        }
+
+        T entity = null;
+        if (mUseCache) {
+            entity = mRepository.getEntity(mCursor.getLong(mIdColumnIndex));
+        }
+        if (entity == null) {
+            entity = mRepository.newInstance();
+        }
+
+        mRepository.load(entity, mCursor, mColumnIndexes);
+        if (mUseCache) {
+            mRepository.putEntity(entity);
+        }
+
+        return entity;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * Closes the underlying cursor. Further calls to {@link #hasNext()} return false.
+     */
+    @Override
+    public void close() {
+        if (!mCursor.isClosed()) {
+            mCursor.close();
+        }
+    }
+}
@@ -19,12 +19,15 @@ package com.nhaarman.ellie;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteCursor;
 import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.util.Log;
@@ -32,19 +35,57 @@ import android.util.Log;
 import com.nhaarman.ellie.internal.AdapterHolder;
 import com.nhaarman.ellie.internal.ModelAdapter;
 import com.nhaarman.ellie.internal.RepositoryHolder;
+import com.nhaarman.ellie.util.ConcurrentLongCache;
+import com.nhaarman.ellie.util.EmptyLongCache;
+import com.nhaarman.ellie.util.ExpiringLongCache;
+import com.nhaarman.ellie.util.LongCache;
+import com.nhaarman.ellie.util.LongLruCache;
+import com.nhaarman.ellie.util.ReferenceLongCache;
+import com.nhaarman.ellie.util.ReferenceLongCache.ReferenceType;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Observer;
+import rx.observers.SerializedObserver;
+import rx.subjects.PublishSubject;
 
 @SuppressWarnings({"rawtypes", "ParameterNameDiffersFromOverriddenParameter"})
 public final class Ellie {
 
     public static final int DEFAULT_CACHE_SIZE = 1024;
 
+    public static final int DEFAULT_READER_COUNT = 4;
+
     private static final String TAG = "Ellie";
 
+    /**
+     * The default maximum number of arguments SQLite binds to a single statement.
+     */
+    private static final int MAX_BOUND_ARGUMENTS = 999;
+
+    /**
+     * The first SQLite version that supports {@code INSERT ... ON CONFLICT DO UPDATE}.
+     */
+    private static final int[] UPSERT_SQLITE_VERSION = {3, 24};
+
+    /**
+     * The first SQLite version that supports row value comparisons, such as {@code (a, b) > (?, ?)}.
+     */
+    private static final int[] ROW_VALUES_SQLITE_VERSION = {3, 15};
+
+    /**
+     * The maximum number of partial update statements built per table, one for each combination of changed columns.
+     */
+    private static final int MAX_UPDATE_STATEMENTS = 16;
+
     private static Ellie sInstance = new Ellie();
 
     /**
@@ -69,16 +110,117 @@ public final class Ellie {
         }
     }
 
+    /**
+     * Controls the entity cache used by the model repositories.
+     */
+    public enum CacheType {
+        /**
+         * Evict the least recently used entity. All access to a repository's cache is serialized by a single lock.
+         */
+        LRU {
+            @Override
+            public <V> LongCache<V> newCache(final int maxSize) {
+                return new LongLruCache<>(maxSize);
+            }
+        },
+        /**
+         * Approximate least recently used eviction, using a lock striped cache. Use when many threads load entities
+         * concurrently.
+         */
+        CONCURRENT {
+            @Override
+            public <V> LongCache<V> newCache(final int maxSize) {
+                return new ConcurrentLongCache<>(maxSize);
+            }
+        },
+        /**
+         * Hold entities through soft references, ignoring the cache size. Entities stay cached until the garbage
+         * collector needs the memory.
+         */
+        SOFT {
+            @Override
+            public <V> LongCache<V> newCache(final int maxSize) {
+                return new ReferenceLongCache<>(ReferenceType.SOFT);
+            }
+        },
+        /**
+         * Hold entities through weak references, ignoring the cache size. Entities stay cached for as long as they
+         * are referenced elsewhere, so a row always maps to the same instance while that instance is in use.
+         */
+        WEAK {
+            @Override
+            public <V> LongCache<V> newCache(final int maxSize) {
+                return new ReferenceLongCache<>(ReferenceType.WEAK);
+            }
+        },
+        /**
+         * Do not cache entities. Every query creates new entity instances.
+         */
+        NONE {
+            @Override
+            public <V> LongCache<V> newCache(final int maxSize) {
+                return new EmptyLongCache<>();
+            }
+        };
+
+        public abstract <V> LongCache<V> newCache(int maxSize);
+
+        /**
+         * Creates a cache whose entries expire {@code ttl} after they were cached. Entries do not expire if
+         * {@code ttl} is 0. SOFT and WEAK caches do not support a time to live.
+         */
+        public <V> LongCache<V> newCache(final int maxSize, final long ttl, final TimeUnit ttlUnit) {
+            if (ttl == 0) {
+                return newCache(maxSize);
+            }
+
+            if (!supportsTtl()) {
+                throw new IllegalArgumentException("A time to live is not supported for " + this + " caches.");
+            }
+
+            return new ExpiringLongCache<>(this.<Object>newCache(maxSize), ttl, ttlUnit);
+        }
+
+        /**
+         * Returns whether the cache size limits the number of cached entities.
+         */
+        public boolean isBounded() {
+            return this == LRU || this == CONCURRENT;
+        }
+
+        /**
+         * Returns whether entries can expire. A soft or weak reference to an expiring entry would only reference the
+         * entry wrapper, which is collected right away.
+         */
+        public boolean supportsTtl() {
+            return this != SOFT && this != WEAK;
+        }
+    }
+
     private AdapterHolder mAdapterHolder;
 
     private RepositoryHolder mRepositoryHolder;
 
     private SQLiteDatabase mSQLiteDatabase;
 
+    private QueryExecutor mQueryExecutor;
+
+    private boolean mNativeUpsert;
+
+    private boolean mRowValues;
+
+    private final Map<String, Map<Long, String>> mUpdateSql = new HashMap<>();
+
     private LogLevel mLogLevel = LogLevel.NONE;
 
     private boolean mInitialized;
 
+    private final PublishSubject<Class<? extends Model>> mTableChanges = PublishSubject.create();
+
+    private final Observer<Class<? extends Model>> mTableChangeObserver = new SerializedObserver<>(mTableChanges);
+
+    private final ThreadLocal<Transaction> mCurrentTransaction = new ThreadLocal<>();
+
     public static Ellie getInstance() {
         synchronized (Ellie.class) {
             if (sInstance == null) {
@@ -142,14 +284,40 @@ public final class Ellie {
      * @param logLevel  The logging level.
      */
     public void init(final Context context, final String name, final int version, final int cacheSize, final LogLevel logLevel) {
+        init(context, name, version, cacheSize, CacheType.LRU, logLevel);
+    }
+
+    /**
+     * Initialize the database. Must be called before interacting with the database.
+     *
+     * @param context   Context
+     * @param name      The database name.
+     * @param version   The database version.
+     * @param cacheSize The cache size.
+     * @param cacheType The type of entity cache.
+     * @param logLevel  The logging level.
+     */
+    public void init(final Context context, final String name, final int version, final int cacheSize, final CacheType cacheType, final LogLevel logLevel) {
+        init(context, name, version, new EllieConfig.Builder().cacheSize(cacheSize).cacheType(cacheType).logLevel(logLevel).build());
+    }
+
+    /**
+     * Initialize the database. Must be called before interacting with the database.
+     *
+     * @param context Context
+     * @param name    The database name.
+     * @param version The database version.
+     * @param config  The database and cache configuration.
+     */
+    public void init(final Context context, final String name, final int version, final EllieConfig config) {
         if (mInitialized) {
-            if (logLevel.log(LogLevel.BASIC)) {
+            if (config.getLogLevel().log(LogLevel.BASIC)) {
                 Log.d(TAG, "Already initialized.");
             }
             return;
         }
 
-        mLogLevel = logLevel;
+        mLogLevel = config.getLogLevel();
 
         try {
             Class<? extends AdapterHolder> adapterHolderClass = (Class<? extends AdapterHolder>) Class.forName(AdapterHolder.IMPL_CLASS_FQCN);
@@ -159,17 +327,25 @@ public final class Ellie {
             throw new IllegalStateException(e);
         }
 
-        DatabaseHelper databaseHelper = new DatabaseHelper(context.getApplicationContext(), name, version);
+        DatabaseHelper databaseHelper = new DatabaseHelper(context.getApplicationContext(), name, version, config);
         mSQLiteDatabase = databaseHelper.getWritableDatabase();
+        if (config.isWriteAheadLoggingEnabled()) {
+            enableWriteAheadLogging();
+        }
+        final String sqliteVersion = DatabaseUtils.stringForQuery(mSQLiteDatabase, "SELECT sqlite_version()", null);
+        mNativeUpsert = config.isNativeUpsertEnabled() && isSQLiteVersionAtLeast(sqliteVersion, UPSERT_SQLITE_VERSION);
+        mRowValues = isSQLiteVersionAtLeast(sqliteVersion, ROW_VALUES_SQLITE_VERSION);
 
         try {
             Class<? extends RepositoryHolder> adapterHolderClass = (Class<? extends RepositoryHolder>) Class.forName(RepositoryHolder.IMPL_CLASS_FQCN);
-            Constructor<? extends RepositoryHolder> constructor = adapterHolderClass.getConstructor(Ellie.class, SQLiteDatabase.class, int.class);
-            mRepositoryHolder = constructor.newInstance(this, mSQLiteDatabase, cacheSize);
+            Constructor<? extends RepositoryHolder> constructor = adapterHolderClass.getConstructor(Ellie.class, SQLiteDatabase.class, int.class, CacheType.class);
+            mRepositoryHolder = constructor.newInstance(this, mSQLiteDatabase, config.getCacheSize(), config.getCacheType());
         } catch (ClassNotFoundException | IllegalAccessException | InstantiationException | InvocationTargetException | NoSuchMethodException e) {
             throw new IllegalStateException(e);
         }
 
+        mQueryExecutor = new QueryExecutor(config.getReaderCount());
+
         mInitialized = true;
     }
 
@@ -177,10 +353,92 @@ public final class Ellie {
         return mSQLiteDatabase;
     }
 
+    /**
+     * Returns the executor that runs asynchronous queries, such as {@link com.nhaarman.ellie.query.ResultQuery#fetchAsync()}
+     * and the query Observables.
+     */
+    public QueryExecutor getQueryExecutor() {
+        return mQueryExecutor;
+    }
+
+    /**
+     * Returns whether the SQLite version of the database supports row value comparisons, such as
+     * {@code (a, b) > (?, ?)}.
+     */
+    public boolean supportsRowValues() {
+        return mRowValues;
+    }
+
     public <T extends Model> String getTableName(final Class<T> cls) {
         return mAdapterHolder.getModelAdapter(cls).getTableName();
     }
 
+    /**
+     * Returns an Observable that emits the Model class of a table whenever a row of the table was inserted, updated
+     * or deleted through a model repository or a query builder. Writes through raw SQL are not observed.
+     *
+     * @return The table changes.
+     */
+    public Observable<Class<? extends Model>> getTableChanges() {
+        return mTableChanges.asObservable();
+    }
+
+    /**
+     * Notifies the observers of {@link #getTableChanges()} that the table of given Model class changed. Safe to call
+     * from any thread. If the calling thread runs a transaction, the observers are notified once it is committed.
+     *
+     * @param table The Model class of the changed table.
+     */
+    public void notifyTableChanged(final Class<? extends Model> table) {
+        final Transaction transaction = mCurrentTransaction.get();
+        if (transaction == null) {
+            mTableChangeObserver.onNext(table);
+        } else {
+            transaction.addChangedTable(table);
+        }
+    }
+
+    /**
+     * Begins a transaction on the calling thread. If the thread already runs a transaction, the new transaction is
+     * nested in it.
+     *
+     * @return The transaction, which must be ended using {@link Transaction#end()}.
+     */
+    public Transaction beginTransaction() {
+        final Transaction transaction = new Transaction(this, mSQLiteDatabase, mCurrentTransaction.get());
+        mSQLiteDatabase.beginTransaction();
+        mCurrentTransaction.set(transaction);
+        return transaction;
+    }
+
+    /**
+     * Runs given Runnable in a transaction, which is committed if the Runnable returns normally, and rolled back if
+     * it throws.
+     *
+     * @param runnable The Runnable to run.
+     */
+    public void runInTransaction(final Runnable runnable) {
+        final Transaction transaction = beginTransaction();
+        try {
+            runnable.run();
+            transaction.setSuccessful();
+        } finally {
+            transaction.end();
+        }
+    }
+
+    Transaction getCurrentTransaction() {
+        return mCurrentTransaction.get();
+    }
+
+    void setCurrentTransaction(final Transaction transaction) {
+        if (transaction == null) {
+            mCurrentTransaction.remove();
+        } else {
+            mCurrentTransaction.set(transaction);
+        }
+    }
+
     // Convenience methods
 
     /**
@@ -193,26 +451,7 @@ public final class Ellie {
      * @return The list of entities.
      */
     public <T extends Model> List<T> processCursor(final Class<T> cls, final Cursor cursor) {
-        final List<T> entities = new ArrayList<>();
-        try {
-            Constructor<T> entityConstructor = cls.getConstructor();
-            if (cursor.moveToFirst()) {
-                do {
-                    T entity = getModelRepository(cls).getEntity(cursor.getLong(cursor.getColumnIndex(Model.COLUMN_ID)));
-                    if (entity == null) {
-                        entity = entityConstructor.newInstance();
-                    }
-
-                    entity.load(cursor);
-                    entities.add(entity);
-                }
-                while (cursor.moveToNext());
-            }
-        } catch (NoSuchMethodException | InvocationTargetException | InstantiationException | IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        }
-
-        return entities;
+        return processCursor(getModelRepository(cls), cursor);
     }
 
     /**
@@ -230,6 +469,346 @@ public final class Ellie {
         return entities;
     }
 
+    /**
+     * Iterate over a cursor, loading an entity per row as the rows are requested. The iterator closes the cursor when
+     * it is exhausted or closed.
+     *
+     * @param <T>      The Model type
+     * @param cls      The model class.
+     * @param cursor   The result cursor.
+     * @param useCache Whether to reuse cached instances and cache the loaded entities.
+     *
+     * @return The iterator.
+     */
+    public <T extends Model> CursorIterator<T> iterateCursor(final Class<T> cls, final Cursor cursor, final boolean useCache) {
+        return new CursorIterator<>(getModelRepository(cls), cursor, useCache);
+    }
+
+    /**
+     * Runs a query, binding each argument with its SQLite type, as described by
+     * {@link com.nhaarman.ellie.query.Query#getBindArgs()}. Unlike {@link SQLiteDatabase#rawQuery}, numbers are not
+     * converted to Strings, so comparisons with INTEGER and REAL columns can use their indices.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs The arguments, or null.
+     *
+     * @return The result cursor.
+     */
+    public Cursor rawQuery(final String sql, final Object[] bindArgs) {
+        if (bindArgs == null || bindArgs.length == 0) {
+            return mSQLiteDatabase.rawQuery(sql, null);
+        }
+        return mSQLiteDatabase.rawQueryWithFactory(new BindArgsCursorFactory(bindArgs), sql, null, null);
+    }
+
+    /**
+     * Executes a statement that returns no data, binding each argument with its SQLite type.
+     *
+     * @param sql      The SQL statement.
+     * @param bindArgs The arguments, or null.
+     */
+    public void execSQL(final String sql, final Object[] bindArgs) {
+        if (bindArgs == null || bindArgs.length == 0) {
+            mSQLiteDatabase.execSQL(sql);
+        } else {
+            mSQLiteDatabase.execSQL(sql, bindArgs);
+        }
+    }
+
+    /**
+     * Runs a query with a single integer argument. Unlike {@link SQLiteDatabase#rawQuery}, the argument is bound as a
+     * long rather than converted to a String.
+     *
+     * @param sql       The SQL query, with a single {@code ?} placeholder.
+     * @param editTable The name of the queried table.
+     * @param argument  The argument.
+     *
+     * @return The result cursor.
+     */
+    Cursor rawQuery(final String sql, final String editTable, final long argument) {
+        return rawQuery(sql, editTable, new long[]{argument}, 0, 1);
+    }
+
+    /**
+     * Runs a query with integer arguments, binding {@code count} elements of given array starting at {@code offset}.
+     *
+     * @param sql       The SQL query, with {@code count} {@code ?} placeholders.
+     * @param editTable The name of the queried table.
+     * @param arguments The arguments.
+     * @param offset    The index of the first argument to bind.
+     * @param count     The number of arguments to bind.
+     *
+     * @return The result cursor.
+     */
+    Cursor rawQuery(final String sql, final String editTable, final long[] arguments, final int offset, final int count) {
+        return mSQLiteDatabase.rawQueryWithFactory(new LongArgumentCursorFactory(arguments, offset, count), sql, null, editTable);
+    }
+
+    /**
+     * Iterate over a cursor and load entities. Models referenced by the rows are fetched up front using
+     * {@link ModelRepository#findReferences(Cursor, int[])}, instead of one query per row.
+     */
+    <T extends Model> List<T> processCursor(final ModelRepository<T> repository, final Cursor cursor) {
+        final List<T> entities = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            final int[] columnIndexes = repository.getColumnIndexes(cursor);
+            final int idColumnIndex = cursor.getColumnIndex(Model.COLUMN_ID);
+            final List<? extends Model> references = repository.findReferences(cursor, columnIndexes);
+
+            cursor.moveToFirst();
+            do {
+                T entity = repository.getEntity(cursor.getLong(idColumnIndex));
+                if (entity == null) {
+                    entity = repository.newInstance();
+                }
+
+                repository.load(entity, cursor, columnIndexes);
+                repository.putEntity(entity);
+                entities.add(entity);
+            }
+            while (cursor.moveToNext());
+
+            // Only release the references once all rows are loaded, so soft and weak caches cannot drop them early.
+            references.clear();
+        }
+
+        return entities;
+    }
+
+    /**
+     * Finds the entities with given ids. Cached entities are returned as is, the others are fetched in as few queries
+     * as SQLite's limit on bound arguments allows.
+     *
+     * @param repository The repository of the entities.
+     * @param tableName  The table of the entities.
+     * @param ids        The ids to find.
+     *
+     * @return The found entities, in the order of {@code ids}. Ids without a row are skipped.
+     */
+    <T extends Model> List<T> findAll(final ModelRepository<T> repository, final String tableName, final long[] ids) {
+        final Object[] found = new Object[ids.length];
+        final long[] misses = new long[ids.length];
+        int missCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            found[i] = repository.getEntity(ids[i]);
+            if (found[i] == null) {
+                misses[missCount++] = ids[i];
+            }
+        }
+        missCount = sortDistinct(misses, missCount);
+
+        final Map<Long, T> loaded = new HashMap<>(missCount * 2);
+        for (int offset = 0; offset < missCount; offset += MAX_BOUND_ARGUMENTS) {
+            final int count = Math.min(MAX_BOUND_ARGUMENTS, missCount - offset);
+            final Cursor cursor = rawQuery(createFindAllSql(tableName, count), tableName, misses, offset, count);
+            try {
+                for (T entity : processCursor(repository, cursor)) {
+                    loaded.put(entity.getId(), entity);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        final List<T> entities = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            final T entity = found[i] != null ? (T) found[i] : loaded.get(ids[i]);
+            if (entity != null) {
+                entities.add(entity);
+            }
+        }
+
+        return entities;
+    }
+
+    /**
+     * Collects the distinct, non-null values of given integer column over all rows of given cursor.
+     *
+     * @param cursor      The cursor.
+     * @param columnIndex The index of the column, or -1 if the cursor does not contain the column.
+     *
+     * @return The sorted, distinct values.
+     */
+    long[] getDistinctIds(final Cursor cursor, final int columnIndex) {
+        if (columnIndex < 0 || !cursor.moveToFirst()) {
+            return new long[0];
+        }
+
+        final long[] ids = new long[cursor.getCount()];
+        int count = 0;
+        do {
+            if (!cursor.isNull(columnIndex)) {
+                ids[count++] = cursor.getLong(columnIndex);
+            }
+        }
+        while (cursor.moveToNext());
+
+        return Arrays.copyOf(ids, sortDistinct(ids, count));
+    }
+
+    /**
+     * Records the values given entity was written with, so that a later update only writes the columns whose values
+     * differ. During a transaction, the recorded values are forgotten again if the transaction rolls back.
+     *
+     * @param entity   The entity.
+     * @param snapshot The column values, in the form the entity's repository compares them in.
+     */
+    void onEntityWritten(final Model entity, final Object snapshot) {
+        entity.setSnapshot(snapshot);
+        final Transaction transaction = getCurrentTransaction();
+        if (transaction != null) {
+            transaction.addWrittenEntity(entity);
+        }
+    }
+
+    /**
+     * Updates given columns of the row of given entity, binding their values with
+     * {@link ModelRepository#bind(SQLiteStatement, Model, long)}. The SQL for each combination of columns is built
+     * once; when more than half of the columns changed, or too many combinations were built for the table, all
+     * columns are written.
+     *
+     * @param repository     The repository of the entity.
+     * @param entity         The entity.
+     * @param tableName      The table of the entity.
+     * @param columns        The column names.
+     * @param changedColumns The columns to write, as a bit mask in the order of {@code columns}, where bit 63 stands
+     *                       for all columns from index 63 on. {@code -1} writes all columns.
+     *
+     * @return Whether any column was written.
+     */
+    <T extends Model> boolean updateColumns(final ModelRepository<T> repository, final T entity, final String tableName,
+                                            final String[] columns, final long changedColumns) {
+        if (changedColumns == 0) {
+            return false;
+        }
+
+        final long allColumns = columns.length >= Long.SIZE ? -1L : (1L << columns.length) - 1;
+        long writtenColumns = changedColumns;
+        if (Long.bitCount(changedColumns) * 2 > Math.min(columns.length, Long.SIZE)) {
+            writtenColumns = allColumns;
+        }
+
+        String sql = getUpdateSql(tableName, columns, writtenColumns, allColumns);
+        if (sql == null) {
+            writtenColumns = allColumns;
+            sql = getUpdateSql(tableName, columns, allColumns, allColumns);
+        }
+
+        final SQLiteStatement statement = mSQLiteDatabase.compileStatement(sql);
+        try {
+            final int count = repository.bind(statement, entity, writtenColumns);
+            statement.bindLong(count + 1, entity.getId());
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+        return true;
+    }
+
+    /**
+     * Inserts given entity, or updates the row with the same key if there is one. Uses a single
+     * {@code INSERT ... ON CONFLICT DO UPDATE} statement if SQLite supports it. Otherwise, queries the id of the row
+     * with the key, and inserts or updates the row in a transaction. {@code INSERT OR REPLACE} is not used, because
+     * it deletes the existing row, which cascades to rows referencing it, and {@code INSERT OR IGNORE} is not used,
+     * because it also ignores other constraint violations. When the key is a unique column, the row is found by the
+     * key alone, and the id of the entity is only used when a new row is inserted. If the key matches no row but the
+     * id of the entity is taken by another row, the insert fails with a
+     * {@link android.database.sqlite.SQLiteConstraintException}, whichever statement is used.
+     *
+     * @param repository The repository of the entity, used to bind its values.
+     * @param entity     The entity.
+     * @param tableName  The table of the entity.
+     * @param columns    The column names, in the order they are bound.
+     * @param keyIndex   The index in {@code columns} of the column that identifies the row: the first unique
+     *                   column, or the id column if there is none.
+     * @param key        The serialized value of the key column.
+     *
+     * @return The id of the inserted or updated row.
+     */
+    <T extends Model> long upsert(final ModelRepository<T> repository, final T entity, final String tableName, final String[] columns,
+                                  final int keyIndex, final Object key) {
+        final String keyColumn = columns[keyIndex];
+        final StringBuilder names = new StringBuilder();
+        final StringBuilder placeholders = new StringBuilder();
+        final StringBuilder assignments = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                names.append(',');
+                placeholders.append(',');
+            }
+            names.append(columns[i]);
+            placeholders.append('?');
+
+            if (i != keyIndex && !Model.COLUMN_ID.equals(columns[i])) {
+                if (assignments.length() > 0) {
+                    assignments.append(',');
+                }
+                assignments.append(columns[i]).append('=').append(mNativeUpsert ? "excluded." + columns[i] : "?" + (i + 1));
+            }
+        }
+
+        final String insertSql = "INSERT INTO " + tableName + " (" + names + ") VALUES (" + placeholders + ')';
+        if (!mNativeUpsert) {
+            final Transaction transaction = beginTransaction();
+            try {
+                final long id;
+                final Long existingId = key == null ? null : queryId(tableName, keyColumn, key);
+                if (existingId == null) {
+                    id = executeInsert(insertSql, repository, entity);
+                } else {
+                    if (assignments.length() > 0) {
+                        final SQLiteStatement update = mSQLiteDatabase.compileStatement("UPDATE " + tableName + " SET " + assignments + " WHERE " + keyColumn + "=?" + (keyIndex + 1));
+                        try {
+                            repository.bind(update, entity);
+                            update.execute();
+                        } finally {
+                            update.close();
+                        }
+                    }
+                    id = existingId;
+                }
+                transaction.setSuccessful();
+                return id;
+            } finally {
+                transaction.end();
+            }
+        }
+
+        final String upsertSql;
+        if (assignments.length() == 0) {
+            upsertSql = insertSql + " ON CONFLICT(" + keyColumn + ") DO NOTHING";
+        } else {
+            upsertSql = insertSql + " ON CONFLICT(" + keyColumn + ") DO UPDATE SET " + assignments;
+        }
+
+        final long rowId = executeInsert(upsertSql, repository, entity);
+        if (key == null) {
+            // NULL never conflicts, so the row was inserted.
+            return rowId;
+        }
+        if (Model.COLUMN_ID.equals(keyColumn)) {
+            return ((Number) key).longValue();
+        }
+
+        // After an update, SQLite does not report the id of the row.
+        return queryId(tableName, keyColumn, key);
+    }
+
+    /**
+     * Returns the id of the row of given table whose key column has given value, or null if there is no such row.
+     */
+    private Long queryId(final String tableName, final String keyColumn, final Object key) {
+        final SQLiteStatement query = mSQLiteDatabase.compileStatement("SELECT " + Model.COLUMN_ID + " FROM " + tableName + " WHERE " + keyColumn + "=?");
+        try {
+            DatabaseUtils.bindObjectToProgram(query, 1, key);
+            return query.simpleQueryForLong();
+        } catch (SQLiteDoneException ignored) {
+            return null;
+        } finally {
+            query.close();
+        }
+    }
+
     // Finder methods
 
     List<? extends ModelAdapter> getModelAdapters() {
@@ -244,37 +823,198 @@ public final class Ellie {
         return (TypeAdapter<D, S>) mAdapterHolder.getTypeAdapter(cls);
     }
 
+    // Private methods
+
+    /**
+     * Returns the SQL that updates given columns of a row, building it on first use. Returns null when too many
+     * combinations of columns were built for the table, so that the statement cache of the connection is not flooded
+     * with variants; the SQL that updates all columns is always available.
+     */
+    private String getUpdateSql(final String tableName, final String[] columns, final long changedColumns, final long allColumns) {
+        synchronized (mUpdateSql) {
+            Map<Long, String> sqlByColumns = mUpdateSql.get(tableName);
+            if (sqlByColumns == null) {
+                sqlByColumns = new HashMap<>();
+                mUpdateSql.put(tableName, sqlByColumns);
+            }
+
+            String sql = sqlByColumns.get(changedColumns);
+            if (sql == null) {
+                if (changedColumns != allColumns && sqlByColumns.size() >= MAX_UPDATE_STATEMENTS) {
+                    return null;
+                }
+
+                final StringBuilder builder = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+                boolean first = true;
+                for (int i = 0; i < columns.length; i++) {
+                    if (isColumnSet(changedColumns, i)) {
+                        if (!first) {
+                            builder.append(',');
+                        }
+                        builder.append(columns[i]).append("=?");
+                        first = false;
+                    }
+                }
+                builder.append(" WHERE ").append(Model.COLUMN_ID).append("=?");
+
+                sql = builder.toString();
+                sqlByColumns.put(changedColumns, sql);
+            }
+            return sql;
+        }
+    }
+
+    private static boolean isColumnSet(final long columns, final int index) {
+        return (columns & (1L << Math.min(index, Long.SIZE - 1))) != 0;
+    }
+
+    /**
+     * Compiles given insert statement, binds the values of given entity and runs it. The statement is compiled for
+     * each call rather than shared between threads; the platform caches the prepared statements of each connection.
+     */
+    private <T extends Model> long executeInsert(final String sql, final ModelRepository<T> repository, final T entity) {
+        final SQLiteStatement statement = mSQLiteDatabase.compileStatement(sql);
+        try {
+            repository.bind(statement, entity);
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Returns whether given SQLite version string, such as "3.22.0", is at least {@code minimum}.
+     */
+    private static boolean isSQLiteVersionAtLeast(final String version, final int[] minimum) {
+        final String[] parts = version.split("\\.");
+        for (int i = 0; i < minimum.length; i++) {
+            final int part = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+            if (part != minimum[i]) {
+                return part > minimum[i];
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Sorts the first {@code count} elements of given array and moves the distinct values to the front.
+     *
+     * @return The number of distinct values.
+     */
+    private static int sortDistinct(final long[] values, final int count) {
+        if (count == 0) {
+            return 0;
+        }
+
+        Arrays.sort(values, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct;
+    }
+
+    private static String createFindAllSql(final String tableName, final int count) {
+        final StringBuilder sql = new StringBuilder("SELECT * FROM ");
+        sql.append(tableName).append(" WHERE ").append(Model.COLUMN_ID).append(" IN (?");
+        for (int i = 1; i < count; i++) {
+            sql.append(",?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Switches the database to write-ahead logging. This is done after the database was created, rather than by
+     * opening it with write-ahead logging enabled, so that a configured page size is applied first.
+     */
+    private void enableWriteAheadLogging() {
+        if (VERSION.SDK_INT < VERSION_CODES.HONEYCOMB) {
+            if (mLogLevel.log(LogLevel.BASIC)) {
+                Log.w(TAG, "Write-ahead logging requires API level 11.");
+            }
+            return;
+        }
+
+        if (!mSQLiteDatabase.enableWriteAheadLogging() && mLogLevel.log(LogLevel.BASIC)) {
+            Log.w(TAG, "Could not enable write-ahead logging.");
+        }
+    }
+
     // Private classes
 
     private class DatabaseHelper extends SQLiteOpenHelper {
 
-        DatabaseHelper(final Context context, final String name, final int version) {
+        private final EllieConfig mConfig;
+
+        DatabaseHelper(final Context context, final String name, final int version, final EllieConfig config) {
             super(context, name, mLogLevel.log(LogLevel.FULL) ? new LoggingCursorAdapter() : null, version);
+            mConfig = config;
         }
 
+        /**
+         * Called when the connection is opened, before {@link #onCreate} and {@link #onUpgrade}, as of API level 16.
+         */
         @Override
-        public void onOpen(final SQLiteDatabase db) {
+        public void onConfigure(final SQLiteDatabase db) {
+            executePageSize(db);
             executePragmas(db);
         }
 
+        @Override
+        public void onOpen(final SQLiteDatabase db) {
+            if (VERSION.SDK_INT < VERSION_CODES.JELLY_BEAN) {
+                executePragmas(db);
+            }
+        }
+
         @Override
         public void onCreate(final SQLiteDatabase sqLiteDatabase) {
-            executePragmas(sqLiteDatabase);
             executeCreate(sqLiteDatabase);
             executeMigrations(sqLiteDatabase, -1, sqLiteDatabase.getVersion());
         }
 
         @Override
         public void onUpgrade(final SQLiteDatabase sqLiteDatabase, final int oldVersion, final int newVersion) {
-            executePragmas(sqLiteDatabase);
             executeCreate(sqLiteDatabase);
             executeMigrations(sqLiteDatabase, oldVersion, newVersion);
         }
 
+        /**
+         * Sets the page size of a database that is about to be created. The platform already added its
+         * {@code android_metadata} table, so the file is rebuilt with {@code VACUUM}, which is cheap while the
+         * database holds just that table.
+         */
+        private void executePageSize(final SQLiteDatabase db) {
+            final Integer pageSize = mConfig.getPageSize();
+            if (pageSize == null || db.getVersion() != 0) {
+                return;
+            }
+
+            executePragma(db, "PRAGMA page_size=" + pageSize);
+            db.execSQL("VACUUM");
+        }
+
         private void executePragmas(final SQLiteDatabase db) {
             if (VERSION.SDK_INT >= VERSION_CODES.FROYO) {
                 db.execSQL("PRAGMA foreign_keys=ON;");
             }
+
+            for (String pragma : mConfig.getPragmas()) {
+                executePragma(db, pragma);
+            }
+        }
+
+        private void executePragma(final SQLiteDatabase db, final String pragma) {
+            // Some pragmas return the new value, which execSQL does not allow.
+            final Cursor cursor = db.rawQuery(pragma, null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
         }
 
         private void executeCreate(final SQLiteDatabase db) {
@@ -317,6 +1057,52 @@ public final class Ellie {
         }
     }
 
+    private class LongArgumentCursorFactory implements CursorFactory {
+
+        private final long[] mArguments;
+
+        private final int mOffset;
+
+        private final int mCount;
+
+        LongArgumentCursorFactory(final long[] arguments, final int offset, final int count) {
+            mArguments = arguments;
+            mOffset = offset;
+            mCount = count;
+        }
+
+        @Override
+        public Cursor newCursor(final SQLiteDatabase sqLiteDatabase, final SQLiteCursorDriver sqLiteCursorDriver, final String editTable, final SQLiteQuery sqLiteQuery) {
+            for (int i = 0; i < mCount; i++) {
+                sqLiteQuery.bindLong(i + 1, mArguments[mOffset + i]);
+            }
+            if (mLogLevel.log(LogLevel.FULL)) {
+                Log.v(TAG, sqLiteQuery.toString());
+            }
+            return new SQLiteCursor(sqLiteCursorDriver, editTable, sqLiteQuery);
+        }
+    }
+
+    private class BindArgsCursorFactory implements CursorFactory {
+
+        private final Object[] mBindArgs;
+
+        BindArgsCursorFactory(final Object[] bindArgs) {
+            mBindArgs = bindArgs;
+        }
+
+        @Override
+        public Cursor newCursor(final SQLiteDatabase sqLiteDatabase, final SQLiteCursorDriver sqLiteCursorDriver, final String editTable, final SQLiteQuery sqLiteQuery) {
+            for (int i = 0; i < mBindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(sqLiteQuery, i + 1, mBindArgs[i]);
+            }
+            if (mLogLevel.log(LogLevel.FULL)) {
+                Log.v(TAG, sqLiteQuery.toString());
+            }
+            return new SQLiteCursor(sqLiteCursorDriver, editTable, sqLiteQuery);
+        }
+    }
+
     private static class LoggingCursorAdapter implements CursorFactory {
 
         @Override
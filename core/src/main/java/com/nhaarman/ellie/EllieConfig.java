@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie;
+
+import com.nhaarman.ellie.Ellie.CacheType;
+import com.nhaarman.ellie.Ellie.LogLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configures the database and the entity caches, passed to {@link Ellie#init(android.content.Context, String, int,
+ * EllieConfig)}. Create instances using a {@link Builder}. Database settings that are not set keep the SQLite
+ * defaults. Pragmas are applied once each time the primary connection is opened, before the tables are created or
+ * migrated; connections the platform adds for parallel reads under write-ahead logging use the platform's settings.
+ */
+@SuppressWarnings("PublicInnerClass")
+public final class EllieConfig {
+
+    /**
+     * Values for {@code PRAGMA synchronous}.
+     */
+    public enum Synchronous {
+        /**
+         * Do not sync. Fastest, but a power loss may corrupt the database.
+         */
+        OFF,
+        /**
+         * Sync at the most critical moments. With write-ahead logging, the database cannot be corrupted, but
+         * transactions committed just before a power loss may be rolled back.
+         */
+        NORMAL,
+        /**
+         * Sync after every transaction.
+         */
+        FULL
+    }
+
+    /**
+     * Values for {@code PRAGMA temp_store}.
+     */
+    public enum TempStore {
+        /**
+         * Use the compile time default.
+         */
+        DEFAULT,
+        /**
+         * Store temporary tables and indices in files.
+         */
+        FILE,
+        /**
+         * Store temporary tables and indices in memory.
+         */
+        MEMORY
+    }
+
+    private final int mCacheSize;
+
+    private final CacheType mCacheType;
+
+    private final LogLevel mLogLevel;
+
+    private final int mReaderCount;
+
+    private final boolean mWriteAheadLogging;
+
+    private final Synchronous mSynchronous;
+
+    private final Integer mPageCacheSize;
+
+    private final Long mMmapSize;
+
+    private final TempStore mTempStore;
+
+    private final Integer mPageSize;
+
+    private final boolean mNativeUpsert;
+
+    private EllieConfig(final Builder builder) {
+        mCacheSize = builder.mCacheSize;
+        mCacheType = builder.mCacheType;
+        mLogLevel = builder.mLogLevel;
+        mReaderCount = builder.mReaderCount;
+        mWriteAheadLogging = builder.mWriteAheadLogging;
+        mSynchronous = builder.mSynchronous;
+        mPageCacheSize = builder.mPageCacheSize;
+        mMmapSize = builder.mMmapSize;
+        mTempStore = builder.mTempStore;
+        mPageSize = builder.mPageSize;
+        mNativeUpsert = builder.mNativeUpsert;
+    }
+
+    public int getCacheSize() {
+        return mCacheSize;
+    }
+
+    public CacheType getCacheType() {
+        return mCacheType;
+    }
+
+    public LogLevel getLogLevel() {
+        return mLogLevel;
+    }
+
+    public int getReaderCount() {
+        return mReaderCount;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLogging;
+    }
+
+    public boolean isNativeUpsertEnabled() {
+        return mNativeUpsert;
+    }
+
+    /**
+     * Returns the page size to create the database with, or null to use the SQLite default.
+     */
+    public Integer getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns the pragma statements executed whenever the database is opened, in execution order. The page size is
+     * not included, it is only applied when the database is created.
+     */
+    public List<String> getPragmas() {
+        final List<String> pragmas = new ArrayList<>();
+        if (mSynchronous != null) {
+            pragmas.add("PRAGMA synchronous=" + mSynchronous.name());
+        }
+        if (mPageCacheSize != null) {
+            pragmas.add("PRAGMA cache_size=-" + mPageCacheSize);
+        }
+        if (mMmapSize != null) {
+            pragmas.add("PRAGMA mmap_size=" + mMmapSize);
+        }
+        if (mTempStore != null) {
+            pragmas.add("PRAGMA temp_store=" + mTempStore.name());
+        }
+        return Collections.unmodifiableList(pragmas);
+    }
+
+    /**
+     * Builds {@link EllieConfig} instances.
+     */
+    public static final class Builder {
+
+        private int mCacheSize = Ellie.DEFAULT_CACHE_SIZE;
+
+        private CacheType mCacheType = CacheType.LRU;
+
+        private LogLevel mLogLevel = LogLevel.NONE;
+
+        private int mReaderCount = Ellie.DEFAULT_READER_COUNT;
+
+        private boolean mWriteAheadLogging;
+
+        private Synchronous mSynchronous;
+
+        private Integer mPageCacheSize;
+
+        private Long mMmapSize;
+
+        private TempStore mTempStore;
+
+        private Integer mPageSize;
+
+        private boolean mNativeUpsert = true;
+
+        /**
+         * Sets the default maximum number of cached entities per table. Defaults to {@link Ellie#DEFAULT_CACHE_SIZE}.
+         */
+        public Builder cacheSize(final int cacheSize) {
+            if (cacheSize <= 0) {
+                throw new IllegalArgumentException("cacheSize <= 0");
+            }
+            mCacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the default type of entity cache. Defaults to {@link CacheType#LRU}.
+         */
+        public Builder cacheType(final CacheType cacheType) {
+            if (cacheType == null) {
+                throw new IllegalArgumentException("cacheType == null");
+            }
+            mCacheType = cacheType;
+            return this;
+        }
+
+        /**
+         * Sets the logging level. Defaults to {@link LogLevel#NONE}.
+         */
+        public Builder logLevel(final LogLevel logLevel) {
+            if (logLevel == null) {
+                throw new IllegalArgumentException("logLevel == null");
+            }
+            mLogLevel = logLevel;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that run asynchronous reads. Defaults to {@link Ellie#DEFAULT_READER_COUNT}.
+         * Reads only run in parallel with each other and with writes when write-ahead logging is enabled. This does
+         * not size the platform's connection pool: the number of connections it opens for reads is its own, fixed
+         * limit. The pragmas of this configuration are only applied to the primary connection; reads that run on
+         * other connections of the pool use SQLite's defaults.
+         */
+        public Builder readerCount(final int readerCount) {
+            if (readerCount <= 0) {
+                throw new IllegalArgumentException("readerCount <= 0");
+            }
+            mReaderCount = readerCount;
+            return this;
+        }
+
+        /**
+         * Enables write-ahead logging, which lets reads run in parallel with a write. Requires API level 11.
+         */
+        public Builder writeAheadLogging(final boolean enabled) {
+            mWriteAheadLogging = enabled;
+            return this;
+        }
+
+        /**
+         * Sets {@code PRAGMA synchronous}. {@link Synchronous#NORMAL} is usually sufficient with write-ahead logging.
+         */
+        public Builder synchronous(final Synchronous synchronous) {
+            mSynchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * Sets {@code PRAGMA cache_size}, the maximum amount of memory SQLite uses to cache database pages, per
+         * connection.
+         *
+         * @param kibibytes The size of the page cache in KiB.
+         */
+        public Builder pageCacheSize(final int kibibytes) {
+            if (kibibytes <= 0) {
+                throw new IllegalArgumentException("kibibytes <= 0");
+            }
+            mPageCacheSize = kibibytes;
+            return this;
+        }
+
+        /**
+         * Sets {@code PRAGMA mmap_size}, the maximum number of bytes of the database file that is accessed through
+         * memory mapped I/O. 0 disables memory mapped I/O. Ignored by SQLite versions older than 3.7.17.
+         */
+        public Builder mmapSize(final long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("bytes < 0");
+            }
+            mMmapSize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets {@code PRAGMA temp_store}.
+         */
+        public Builder tempStore(final TempStore tempStore) {
+            mTempStore = tempStore;
+            return this;
+        }
+
+        /**
+         * Sets {@code PRAGMA page_size}. Only takes effect when the database is created, on API level 16 and higher.
+         * The page size of an existing database stays the same; changing it requires a {@code VACUUM}.
+         *
+         * @param bytes A power of two between 512 and 65536.
+         */
+        public Builder pageSize(final int bytes) {
+            if (bytes < 512 || bytes > 65536 || Integer.bitCount(bytes) != 1) {
+                throw new IllegalArgumentException("Page size must be a power of two between 512 and 65536: " + bytes);
+            }
+            mPageSize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets whether upserts use a single {@code INSERT ... ON CONFLICT DO UPDATE} statement when the SQLite version
+         * supports it. Otherwise, they query the key of the row and insert or update it in a transaction. Both ways
+         * write the same rows. Defaults to true.
+         */
+        public Builder nativeUpsert(final boolean enabled) {
+            mNativeUpsert = enabled;
+            return this;
+        }
+
+        public EllieConfig build() {
+            return new EllieConfig(this);
+        }
+    }
+}
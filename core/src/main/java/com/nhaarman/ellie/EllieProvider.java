@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.util.SparseArray;
 
+import com.nhaarman.ellie.Ellie.CacheType;
 import com.nhaarman.ellie.Ellie.LogLevel;
 import com.nhaarman.ellie.internal.ModelAdapter;
 
@@ -114,7 +115,7 @@ import com.nhaarman.ellie.internal.ModelAdapter;
 
     @Override
     public boolean onCreate() {
-        mEllie.init(getContext(), getDatabaseName(), getDatabaseVersion(), getCacheSize(), getLogLevel());
+        mEllie.init(getContext(), getDatabaseName(), getDatabaseVersion(), getCacheSize(), getCacheType(), getLogLevel());
         sAuthority = getAuthority();
         sIsImplemented = true;
 
@@ -257,6 +258,15 @@ import com.nhaarman.ellie.internal.ModelAdapter;
         return Ellie.DEFAULT_CACHE_SIZE;
     }
 
+    /**
+     * Returns the default cache type of LRU. Override to provide your own cache type.
+     *
+     * @return The cache type.
+     */
+    protected CacheType getCacheType() {
+        return CacheType.LRU;
+    }
+
     /**
      * Returns the default log level of NONE. Override to provide your own log level.
      *
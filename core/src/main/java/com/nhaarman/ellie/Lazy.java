@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie;
+
+/**
+ * A reference to a Model that is only loaded when it is first accessed. Declare a column of type {@code Lazy<T>}
+ * instead of {@code T} to store just the foreign key when the row is loaded:
+ * <pre>
+ * &#64;Column("note")
+ * public Lazy&lt;Note&gt; note;
+ * </pre>
+ *
+ * @param <T> The referenced Model type.
+ */
+public final class Lazy<T extends Model> {
+
+    private final ModelRepository<T> mRepository;
+
+    private final Long mId;
+
+    private T mEntity;
+
+    Lazy(final ModelRepository<T> repository, final long id) {
+        mRepository = repository;
+        mId = id;
+    }
+
+    private Lazy(final T entity) {
+        mRepository = null;
+        mId = null;
+        mEntity = entity;
+    }
+
+    /**
+     * Creates a reference to an entity that is already loaded.
+     *
+     * @param entity The entity.
+     *
+     * @return The reference, or null if {@code entity} is null.
+     */
+    public static <T extends Model> Lazy<T> of(final T entity) {
+        return entity == null ? null : new Lazy<T>(entity);
+    }
+
+    /**
+     * Returns the id of the referenced entity, without loading it.
+     *
+     * @return The id.
+     */
+    public synchronized Long getId() {
+        return mEntity != null ? mEntity.getId() : mId;
+    }
+
+    /**
+     * Returns the referenced entity, loading it on first access.
+     *
+     * @return The entity, or null if no row with the referenced id exists.
+     */
+    public synchronized T get() {
+        if (mEntity == null && mRepository != null) {
+            mEntity = mRepository.getOrFindEntity(mId);
+        }
+        return mEntity;
+    }
+
+    /**
+     * Returns whether the referenced entity has been loaded.
+     */
+    public synchronized boolean isLoaded() {
+        return mEntity != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Lazy[id=" + getId() + ",loaded=" + isLoaded() + ']';
+    }
+}
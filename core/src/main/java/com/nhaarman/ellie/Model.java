@@ -40,6 +40,17 @@ public abstract class Model {
     @Column(COLUMN_ID) @PrimaryKey @AutoIncrement
     protected Long mId;
 
+    /**
+     * The column values as last loaded from or written to the database, in a form defined by the repository, or null
+     * if unknown.
+     */
+    private Object mSnapshot;
+
+    /**
+     * Whether the entity was loaded from or written to the database.
+     */
+    private boolean mPersisted;
+
     protected Model() {
         mRepository = Ellie.getInstance().getModelRepository(getClass());
     }
@@ -73,19 +84,16 @@ public abstract class Model {
     /**
      * <p>
      * Persist the record to the database. Inserts the record if it does not exists and updates the record if it
-     * does exists.
+     * does exists. Once the record was loaded or saved, later saves only update the columns that changed, and write
+     * nothing if no column changed. A record that was not loaded from the database, but has an id or a unique column value,
+     * replaces the values of the existing row with that key.
      * </p>
      *
      * @return The record id.
      */
     public final Long save() {
-        if (mId == null) {
-            mId = mRepository.create(this);
-        } else {
-            mRepository.update(this);
-        }
+        mRepository.createOrUpdate(this);
         mRepository.putEntity(this);
-        notifyChange();
         return mId;
     }
 
@@ -97,19 +105,32 @@ public abstract class Model {
     public final void delete() {
         mRepository.delete(this);
         mRepository.removeEntity(this);
-        notifyChange();
         mId = null;
+        clearSnapshot();
+    }
+
+    boolean isPersisted() {
+        return mPersisted;
+    }
+
+    Object getSnapshot() {
+        return mSnapshot;
     }
 
     /**
-     * <p>
-     * Notify observers that this record has changed.
-     * </p>
+     * Records the column values the entity was loaded or written with.
+     */
+    void setSnapshot(final Object snapshot) {
+        mSnapshot = snapshot;
+        mPersisted = true;
+    }
+
+    /**
+     * Forgets that the entity is stored in the database, after it was deleted or its write was rolled back.
      */
-    private void notifyChange() {
-//		if (EllieProvider.isImplemented()) {
-//			mEllie.getContext().getContentResolver().notifyChange(EllieProvider.createUri(getClass(), id), null);
-//		}
+    void clearSnapshot() {
+        mSnapshot = null;
+        mPersisted = false;
     }
 
     @Override
@@ -18,6 +18,10 @@
 package com.nhaarman.ellie;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * An interface to perform database operations for a Model.
@@ -28,18 +32,138 @@ public interface ModelRepository<T extends Model> {
 
     /* Direct database manipulation */
 
+    /**
+     * Creates a new, empty instance of the Model, without using reflection.
+     *
+     * @return The new instance.
+     */
+    T newInstance();
+
     void load(T entity, Cursor cursor);
 
+    /**
+     * Loads the values of the current row of given cursor into given entity, using column indexes that were
+     * previously resolved using {@link #getColumnIndexes(Cursor)} for a cursor with the same projection.
+     *
+     * @param entity        The entity to load the values into.
+     * @param cursor        The cursor, positioned at the row to load.
+     * @param columnIndexes The column indexes for this Model's columns.
+     */
+    void load(T entity, Cursor cursor, int[] columnIndexes);
+
+    /**
+     * Resolves the indexes of this Model's columns in given cursor's projection. The result is cached against the
+     * cursor's column layout, so consecutive cursors for the same query do not need to look up the column names again.
+     *
+     * @param cursor The cursor to resolve the column indexes for.
+     *
+     * @return The column indexes, which can be passed to {@link #load(Model, Cursor, int[])}. The array may be
+     *         shared with other callers, and must not be modified.
+     */
+    int[] getColumnIndexes(Cursor cursor);
+
+    /**
+     * Computes a 64-bit signature of the values of this Model's columns in the current row of given cursor, without
+     * loading the row. Rows with equal values have equal signatures.
+     *
+     * @param cursor        The cursor, positioned at the row.
+     * @param columnIndexes The column indexes for this Model's columns.
+     *
+     * @return The signature.
+     */
+    long getSignature(Cursor cursor, int[] columnIndexes);
+
+    /**
+     * Finds the Models referenced by the rows of given cursor, using {@link #findAll(long[])} on their repositories,
+     * so that loading the rows finds them in the cache. Changes the position of the cursor.
+     *
+     * @param cursor        The cursor.
+     * @param columnIndexes The column indexes for this Model's columns.
+     *
+     * @return The referenced Models. Keeping a reference to the list keeps them reachable.
+     */
+    List<? extends Model> findReferences(Cursor cursor, int[] columnIndexes);
+
+    /**
+     * Binds the values of given entity's columns to given statement, in column order, starting at index 1. Binds
+     * each value with its typed bind method, without boxing primitive columns.
+     *
+     * @param statement The statement, with a parameter for every column.
+     * @param entity    The entity whose values to bind.
+     */
+    void bind(SQLiteStatement statement, T entity);
+
+    /**
+     * Binds the values of given columns of given entity to given statement, in column order, starting at index 1.
+     * Binds each value with its typed bind method, without boxing primitive columns.
+     *
+     * @param statement The statement, with a parameter for every column to bind.
+     * @param entity    The entity whose values to bind.
+     * @param columns   The columns to bind, as a bit mask in column order, where bit 63 stands for all columns from
+     *                  index 63 on. {@code -1} binds all columns.
+     *
+     * @return The number of bound values.
+     */
+    int bind(SQLiteStatement statement, T entity, long columns);
+
     /* Model operations */
 
     T find(long id);
 
+    /**
+     * Finds the entities with given ids. Cached entities are served from the cache, the others are fetched using as
+     * few queries as possible.
+     *
+     * @param ids The ids of the entities.
+     *
+     * @return The found entities, in the order of {@code ids}. Ids without a row are skipped.
+     */
+    List<T> findAll(long[] ids);
+
     Long create(T entity);
 
     Long update(T entity);
 
+    /**
+     * Inserts given entity, or updates the existing row with the same key, in a single statement if SQLite supports it
+     * and without loading the row. The key is the first {@link com.nhaarman.ellie.annotation.Unique} column of the
+     * Model, or its id if it has none. A row with the same unique key is updated even if its id differs from the id of
+     * the entity. If no row has the key, but another row has the id of the entity, a
+     * {@link android.database.sqlite.SQLiteConstraintException} is thrown.
+     *
+     * @param entity The entity to insert or update.
+     *
+     * @return The id of the row.
+     */
+    Long upsert(T entity);
+
+    /**
+     * Saves given entity. Entities that were loaded from or written to the database are updated. Other entities are
+     * upserted, or inserted if they have no id and the Model has no unique column.
+     *
+     * @param entity The entity to save.
+     *
+     * @return The id of the row.
+     */
     Long createOrUpdate(T entity);
 
+    /**
+     * Inserts all given entities in a single transaction, using the cached insert statement. Sets the ids of the
+     * entities and caches them; when this call joins an outer {@link Transaction}, the cache entries and change
+     * notifications only take effect once that transaction is committed.
+     *
+     * @param entities The entities to insert.
+     */
+    void createAll(Collection<T> entities);
+
+    /**
+     * Saves all given entities using {@link #createOrUpdate(Model)} in a single transaction, and caches them once
+     * the transaction is committed.
+     *
+     * @param entities The entities to save.
+     */
+    void saveAll(Collection<T> entities);
+
     void delete(T entity);
 
     /* Cache operations */
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Runs queries off the calling thread. Reads run on a bounded pool of reader threads, writes run one at a time on a
+ * single writer thread, so that writes never contend with each other for the database lock. Readers only run in
+ * parallel with the writer if the database uses write-ahead logging.
+ */
+public final class QueryExecutor {
+
+    private final ExecutorService mReadExecutor;
+
+    private final ExecutorService mWriteExecutor;
+
+    private final Scheduler mReadScheduler;
+
+    private final Scheduler mWriteScheduler;
+
+    /**
+     * @param readerCount The number of reader threads.
+     */
+    public QueryExecutor(final int readerCount) {
+        if (readerCount <= 0) {
+            throw new IllegalArgumentException("readerCount <= 0");
+        }
+
+        mReadExecutor = Executors.newFixedThreadPool(readerCount, new QueryThreadFactory("Ellie-Reader-"));
+        mWriteExecutor = Executors.newSingleThreadExecutor(new QueryThreadFactory("Ellie-Writer-"));
+        mReadScheduler = Schedulers.from(mReadExecutor);
+        mWriteScheduler = Schedulers.from(mWriteExecutor);
+    }
+
+    /**
+     * Runs given read on a reader thread.
+     *
+     * @return A Future for the result of {@code read}.
+     */
+    public <V> Future<V> read(final Callable<V> read) {
+        return mReadExecutor.submit(read);
+    }
+
+    /**
+     * Runs given write on the writer thread, after all previously submitted writes.
+     *
+     * @return A Future for the result of {@code write}.
+     */
+    public <V> Future<V> write(final Callable<V> write) {
+        return mWriteExecutor.submit(write);
+    }
+
+    /**
+     * Returns a Scheduler that runs on the reader threads.
+     */
+    public Scheduler getReadScheduler() {
+        return mReadScheduler;
+    }
+
+    /**
+     * Returns a Scheduler that runs on the writer thread.
+     */
+    public Scheduler getWriteScheduler() {
+        return mWriteScheduler;
+    }
+
+    /**
+     * Stops accepting new queries. Queries that were already submitted still run.
+     */
+    public void shutdown() {
+        mReadExecutor.shutdown();
+        mWriteExecutor.shutdown();
+    }
+
+    private static class QueryThreadFactory implements ThreadFactory {
+
+        private final String mNamePrefix;
+
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        QueryThreadFactory(final String namePrefix) {
+            mNamePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, mNamePrefix + mThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
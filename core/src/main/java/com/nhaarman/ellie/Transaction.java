@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * <p>
+ * A database transaction, started using {@link Ellie#beginTransaction()}. Use the same pattern as for
+ * {@link SQLiteDatabase} transactions:
+ * </p>
+ * <pre>
+ *   Transaction transaction = Ellie.getInstance().beginTransaction();
+ *   try {
+ *     ...
+ *     transaction.setSuccessful();
+ *   } finally {
+ *     transaction.end();
+ *   }
+ * </pre>
+ * <p>
+ * Entities cached and table changes notified during the transaction are buffered. The thread that runs the
+ * transaction sees its own cache changes right away, other threads only see them once the transaction is committed.
+ * Table change observers are notified after the commit. On rollback, both are discarded, and the entities written
+ * during the transaction forget the column values they were written with, so their next save writes all columns.
+ * </p>
+ * <p>
+ * Transactions can be nested. A nested transaction that is not successful rolls back the outermost transaction,
+ * like nested {@link SQLiteDatabase} transactions do.
+ * </p>
+ */
+public final class Transaction {
+
+    /**
+     * Marks an entity that was removed from a cache during the transaction.
+     */
+    static final Object REMOVED = new Object();
+
+    private final Ellie mEllie;
+
+    private final SQLiteDatabase mDatabase;
+
+    private final Transaction mParent;
+
+    private final Map<TransactionalLongCache<?>, Map<Long, Object>> mCacheChanges = new IdentityHashMap<>();
+
+    private final Set<Class<? extends Model>> mChangedTables = new LinkedHashSet<>();
+
+    private final Set<Model> mWrittenEntities = Collections.newSetFromMap(new IdentityHashMap<Model, Boolean>());
+
+    private boolean mSuccessful;
+
+    private boolean mChildFailed;
+
+    private boolean mEnded;
+
+    Transaction(final Ellie ellie, final SQLiteDatabase database, final Transaction parent) {
+        mEllie = ellie;
+        mDatabase = database;
+        mParent = parent;
+    }
+
+    /**
+     * Marks the transaction as successful. Do not perform further database operations in this transaction before
+     * calling {@link #end()}.
+     */
+    public void setSuccessful() {
+        if (mEnded) {
+            throw new IllegalStateException("The transaction has already ended.");
+        }
+
+        mDatabase.setTransactionSuccessful();
+        mSuccessful = true;
+    }
+
+    /**
+     * Ends the transaction. Commits it if it was marked successful and none of its nested transactions failed, rolls
+     * it back otherwise. Must be called on the thread that began the transaction, after its nested transactions ended.
+     */
+    public void end() {
+        if (mEnded) {
+            throw new IllegalStateException("The transaction has already ended.");
+        }
+        if (mEllie.getCurrentTransaction() != this) {
+            throw new IllegalStateException("Transactions must be ended in reverse order, on the thread that began them.");
+        }
+
+        mEnded = true;
+        try {
+            mDatabase.endTransaction();
+        } finally {
+            mEllie.setCurrentTransaction(mParent);
+        }
+
+        final boolean committed = mSuccessful && !mChildFailed;
+        if (mParent != null) {
+            mParent.mWrittenEntities.addAll(mWrittenEntities);
+            if (committed) {
+                mParent.merge(this);
+            } else {
+                mParent.mChildFailed = true;
+            }
+        } else if (committed) {
+            applyCacheChanges();
+            for (Class<? extends Model> table : mChangedTables) {
+                mEllie.notifyTableChanged(table);
+            }
+        } else {
+            for (Model entity : mWrittenEntities) {
+                entity.clearSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Returns the value that was cached for given key in this transaction or one of its parents, {@link #REMOVED} if
+     * it was removed, or null if the cache was not changed for the key.
+     */
+    Object getCached(final TransactionalLongCache<?> cache, final long key) {
+        final Map<Long, Object> changes = mCacheChanges.get(cache);
+        if (changes != null) {
+            final Object value = changes.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+
+        return mParent == null ? null : mParent.getCached(cache, key);
+    }
+
+    /**
+     * Buffers caching {@code value} for given key, or removing the key if {@code value} is {@link #REMOVED}.
+     */
+    void putCached(final TransactionalLongCache<?> cache, final long key, final Object value) {
+        Map<Long, Object> changes = mCacheChanges.get(cache);
+        if (changes == null) {
+            changes = new HashMap<>();
+            mCacheChanges.put(cache, changes);
+        }
+        changes.put(key, value);
+    }
+
+    void addChangedTable(final Class<? extends Model> table) {
+        mChangedTables.add(table);
+    }
+
+    /**
+     * Registers an entity whose snapshot was set in this transaction, to be cleared if the transaction rolls back.
+     */
+    void addWrittenEntity(final Model entity) {
+        mWrittenEntities.add(entity);
+    }
+
+    private void merge(final Transaction child) {
+        for (Entry<TransactionalLongCache<?>, Map<Long, Object>> changes : child.mCacheChanges.entrySet()) {
+            for (Entry<Long, Object> change : changes.getValue().entrySet()) {
+                putCached(changes.getKey(), change.getKey(), change.getValue());
+            }
+        }
+        mChangedTables.addAll(child.mChangedTables);
+    }
+
+    private void applyCacheChanges() {
+        for (Entry<TransactionalLongCache<?>, Map<Long, Object>> changes : mCacheChanges.entrySet()) {
+            final TransactionalLongCache<?> cache = changes.getKey();
+            for (Entry<Long, Object> change : changes.getValue().entrySet()) {
+                cache.apply(change.getKey(), change.getValue());
+            }
+        }
+    }
+}
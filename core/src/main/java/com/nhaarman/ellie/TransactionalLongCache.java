@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie;
+
+import com.nhaarman.ellie.util.LongCache;
+
+/**
+ * A {@link LongCache} that buffers puts and removes made during a {@link Transaction} of the calling thread, and
+ * applies them to another cache when the transaction is committed. Outside of a transaction, it delegates directly.
+ */
+@SuppressWarnings("unchecked")
+final class TransactionalLongCache<V> implements LongCache<V> {
+
+    private final Ellie mEllie;
+
+    private final LongCache<V> mCache;
+
+    TransactionalLongCache(final Ellie ellie, final LongCache<V> cache) {
+        mEllie = ellie;
+        mCache = cache;
+    }
+
+    @Override
+    public V get(final long key) {
+        final Transaction transaction = mEllie.getCurrentTransaction();
+        if (transaction != null) {
+            final Object value = transaction.getCached(this, key);
+            if (value == Transaction.REMOVED) {
+                return null;
+            }
+            if (value != null) {
+                return (V) value;
+            }
+        }
+
+        return mCache.get(key);
+    }
+
+    @Override
+    public V put(final long key, final V value) {
+        final Transaction transaction = mEllie.getCurrentTransaction();
+        if (transaction == null) {
+            return mCache.put(key, value);
+        }
+
+        final V previous = get(key);
+        transaction.putCached(this, key, value);
+        return previous;
+    }
+
+    @Override
+    public V remove(final long key) {
+        final Transaction transaction = mEllie.getCurrentTransaction();
+        if (transaction == null) {
+            return mCache.remove(key);
+        }
+
+        final V previous = get(key);
+        transaction.putCached(this, key, Transaction.REMOVED);
+        return previous;
+    }
+
+    /**
+     * Clears the underlying cache right away, even during a transaction.
+     */
+    @Override
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    @Override
+    public int size() {
+        return mCache.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    @Override
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    @Override
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    @Override
+    public int putCount() {
+        return mCache.putCount();
+    }
+
+    @Override
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * Applies a change that was buffered by a committed transaction.
+     */
+    void apply(final long key, final Object value) {
+        if (value == Transaction.REMOVED) {
+            mCache.remove(key);
+        } else {
+            mCache.put(key, (V) value);
+        }
+    }
+}
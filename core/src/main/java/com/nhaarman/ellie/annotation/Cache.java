@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.annotation;
+
+import com.nhaarman.ellie.Ellie;
+import com.nhaarman.ellie.Ellie.CacheType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+/**
+ * <p>
+ * An annotation that configures the entity cache of a table, overriding the cache size and type passed to
+ * {@link Ellie#init}. Must be used in conjunction with {@link Table}.
+ * </p>
+ * <p>
+ * Attributes that are not specified take their default value, not the value passed to {@link Ellie#init}.
+ * </p>
+ */
+@Target(TYPE)
+@Retention(CLASS)
+public @interface Cache {
+
+    /**
+     * Returns the maximum number of cached entities.
+     *
+     * @return The cache size.
+     */
+    public int size() default Ellie.DEFAULT_CACHE_SIZE;
+
+    /**
+     * Returns the cache type.
+     *
+     * @return The cache type.
+     */
+    public CacheType type() default CacheType.LRU;
+
+    /**
+     * Returns the time after which a cached entity expires, counted from the moment it was cached. Expired entities
+     * are loaded from the database again. Entities do not expire if the value is 0.
+     *
+     * @return The time to live.
+     */
+    public long ttl() default 0;
+
+    /**
+     * Returns the unit of {@link #ttl()}.
+     *
+     * @return The time to live unit.
+     */
+    public TimeUnit ttlUnit() default TimeUnit.MILLISECONDS;
+}
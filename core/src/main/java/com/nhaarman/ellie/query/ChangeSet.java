@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.query;
+
+import com.nhaarman.ellie.Model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The difference between two consecutive results of a live query, as emitted by
+ * {@link ResultQuery#observableChanges()}.
+ *
+ * @param <T> The Model type.
+ */
+@SuppressWarnings("PublicInnerClass")
+public final class ChangeSet<T extends Model> {
+
+    private final List<T> mResult;
+
+    private final List<Change> mInserted;
+
+    private final List<Change> mUpdated;
+
+    private final List<Change> mRemoved;
+
+    ChangeSet(final List<T> result, final List<Change> inserted, final List<Change> updated, final List<Change> removed) {
+        mResult = Collections.unmodifiableList(result);
+        mInserted = Collections.unmodifiableList(inserted);
+        mUpdated = Collections.unmodifiableList(updated);
+        mRemoved = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Returns the complete new result. Entities of rows that did not change are the same instances as in the previous
+     * result.
+     */
+    public List<T> getResult() {
+        return mResult;
+    }
+
+    /**
+     * Returns the rows that were not in the previous result, with their positions in the new result.
+     */
+    public List<Change> getInserted() {
+        return mInserted;
+    }
+
+    /**
+     * Returns the rows whose values changed, with their positions in the new result.
+     */
+    public List<Change> getUpdated() {
+        return mUpdated;
+    }
+
+    /**
+     * Returns the rows that are no longer in the result, with their positions in the previous result.
+     */
+    public List<Change> getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * Returns whether no row was inserted, updated or removed. Rows may still have moved.
+     */
+    public boolean isEmpty() {
+        return mInserted.isEmpty() && mUpdated.isEmpty() && mRemoved.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet[inserted=" + mInserted + ",updated=" + mUpdated + ",removed=" + mRemoved + ']';
+    }
+
+    /**
+     * A single changed row.
+     */
+    public static final class Change {
+
+        private final long mId;
+
+        private final int mPosition;
+
+        Change(final long id, final int position) {
+            mId = id;
+            mPosition = position;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public int getPosition() {
+            return mPosition;
+        }
+
+        @Override
+        public String toString() {
+            return mId + "@" + mPosition;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.query;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteStatement;
+
+import com.nhaarman.ellie.CursorIterator;
+import com.nhaarman.ellie.Ellie;
+import com.nhaarman.ellie.Model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * A query whose SQL was built once by {@link ResultQuery#compile()}, to be run many times with different arguments.
+ * Running it does not allocate builders or resolve table names, and SQLite reuses the prepared statement of a
+ * previous run.
+ * </p>
+ * <p>
+ * Arguments passed to the fetch methods replace the arguments of the builder, and are bound to the {@code ?}
+ * placeholders in order, with their SQLite type as described by {@link Query#getBindArgs()}. When no arguments are
+ * passed, the arguments of the builder are used.
+ * </p>
+ *
+ * @param <T> The Model type.
+ */
+public final class CompiledQuery<T extends Model> {
+
+    private final Ellie mEllie;
+
+    private final Class<T> mTable;
+
+    private final String mSql;
+
+    private final Object[] mArgs;
+
+    private final Set<Class<? extends Model>> mTables;
+
+    CompiledQuery(final Ellie ellie, final Class<T> table, final String sql, final Object[] args, final Set<Class<? extends Model>> tables) {
+        mEllie = ellie;
+        mTable = table;
+        mSql = sql;
+        mArgs = args;
+        mTables = Collections.unmodifiableSet(tables);
+    }
+
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * Returns the Model classes of the tables this query reads.
+     */
+    public Set<Class<? extends Model>> getTables() {
+        return mTables;
+    }
+
+    public List<T> fetch(final Object... args) {
+        return mEllie.processAndCloseCursor(mTable, mEllie.rawQuery(mSql, toArgs(args)));
+    }
+
+    public T fetchSingle(final Object... args) {
+        final List<T> results = fetch(args);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * Runs the query and returns an iterator that loads the resulting entities one row at a time, using the entity
+     * cache. The iterator must be closed if it is not iterated to the end.
+     */
+    public CursorIterator<T> iterate(final Object... args) {
+        return mEllie.iterateCursor(mTable, mEllie.rawQuery(mSql, toArgs(args)), true);
+    }
+
+    /**
+     * Runs a query that returns a single integer, such as a count, without creating a cursor.
+     *
+     * @throws android.database.sqlite.SQLiteDoneException if the query returns no rows.
+     */
+    public long fetchLong(final Object... args) {
+        final SQLiteStatement statement = compileStatement(args);
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Runs a query that returns a single text value, without creating a cursor.
+     *
+     * @throws android.database.sqlite.SQLiteDoneException if the query returns no rows.
+     */
+    public String fetchString(final Object... args) {
+        final SQLiteStatement statement = compileStatement(args);
+        try {
+            return statement.simpleQueryForString();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Compiles the query and binds given arguments. The statement is not shared between calls, so that no thread
+     * holds it while waiting for the database; the platform reuses the statement prepared by a previous call.
+     */
+    private SQLiteStatement compileStatement(final Object[] args) {
+        final SQLiteStatement statement = mEllie.getDatabase().compileStatement(mSql);
+        bind(statement, toArgs(args));
+        return statement;
+    }
+
+    private Object[] toArgs(final Object[] args) {
+        if (args == null || args.length == 0) {
+            return mArgs;
+        }
+        return args;
+    }
+
+    private static void bind(final SQLiteStatement statement, final Object[] args) {
+        if (args == null) {
+            return;
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, args[i]);
+        }
+    }
+}
@@ -32,6 +32,7 @@ public final class Delete extends QueryBase {
 
     public Delete with(final Ellie ellie) {
         mEllie = ellie;
+        invalidate();
         return this;
     }
 
@@ -91,8 +92,8 @@ public final class Delete extends QueryBase {
         }
 
         @Override
-        public String[] getPartArgs() {
-            return toStringArray(mWhereArgs);
+        public Object[] getPartArgs() {
+            return mWhereArgs;
         }
 
         @Override
@@ -17,7 +17,17 @@
 
 package com.nhaarman.ellie.query;
 
+import java.util.concurrent.Future;
+
 public interface ExecutableQuery extends Query {
 
     void execute();
+
+    /**
+     * Executes the query on the writer thread of the {@link com.nhaarman.ellie.QueryExecutor}, after all previously
+     * submitted writes.
+     *
+     * @return A Future that completes when the query was executed.
+     */
+    Future<Void> executeAsync();
 }
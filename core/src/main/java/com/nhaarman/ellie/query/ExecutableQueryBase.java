@@ -17,8 +17,12 @@
 
 package com.nhaarman.ellie.query;
 
+import com.nhaarman.ellie.Ellie;
 import com.nhaarman.ellie.Model;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
 public abstract class ExecutableQueryBase extends QueryBase implements ExecutableQuery {
 
     protected ExecutableQueryBase(final Query parent, final Class<? extends Model> table) {
@@ -27,6 +31,27 @@ public abstract class ExecutableQueryBase extends QueryBase implements Executabl
 
     @Override
     public void execute() {
-        getEllie().getDatabase().execSQL(getSql(), getArgs());
+        getEllie().execSQL(getSql(), getRenderedBindArgs());
+        notifyTableChanged();
+    }
+
+    @Override
+    public Future<Void> executeAsync() {
+        return getEllie().getQueryExecutor().write(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        execute();
+                        return null;
+                    }
+                }
+        );
+    }
+
+    /**
+     * Notifies the observers of {@link Ellie#getTableChanges()} that the table this query writes to changed.
+     */
+    protected void notifyTableChanged() {
+        getEllie().notifyTableChanged(mTable);
     }
 }
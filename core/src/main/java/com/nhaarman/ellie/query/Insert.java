@@ -34,6 +34,7 @@ public final class Insert extends QueryBase {
 
     public Insert with(final Ellie ellie) {
         mEllie = ellie;
+        invalidate();
         return this;
     }
 
@@ -118,8 +119,8 @@ public final class Insert extends QueryBase {
         }
 
         @Override
-        protected String[] getPartArgs() {
-            return toStringArray(mValuesArgs);
+        protected Object[] getPartArgs() {
+            return mValuesArgs;
         }
 
         @Override
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.query;
+
+import android.database.Cursor;
+
+import com.nhaarman.ellie.Ellie;
+import com.nhaarman.ellie.Model;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A read-only List of the results of a query, created by {@link ResultQuery#fetchLazy()}, that loads its entities in
+ * windows of consecutive rows as they are accessed. Only the most recently used windows are kept, so the list can span
+ * a large table while holding a bounded number of entities.
+ * </p>
+ * <p>
+ * Windows are loaded by running the query again with a {@code LIMIT} and an {@code OFFSET}, so the query should be
+ * ordered to return its rows in a stable order. SQLite still steps over the skipped rows, so loading a window costs
+ * more the further it is from the start of the list.
+ * </p>
+ * <p>
+ * The list is a view of the query as it was when the list was created: {@link #size()} is counted once and goes stale
+ * when the table changes. Rows inserted later are not included, or push the last rows out of the list. Rows deleted
+ * later shift the windows that are loaded afterwards, and positions beyond the remaining rows are returned as null.
+ * Fetch a new list when the table changes.
+ * </p>
+ *
+ * @param <T> The Model type.
+ */
+public final class LazyList<T extends Model> extends AbstractList<T> implements RandomAccess {
+
+    /**
+     * The number of rows loaded at once by {@link ResultQuery#fetchLazy()}.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 50;
+
+    /**
+     * The number of windows kept in memory, so that scrolling back and forth over a window boundary does not reload.
+     */
+    private static final int MAX_WINDOWS = 2;
+
+    private final Ellie mEllie;
+
+    private final Class<T> mTable;
+
+    private final String mSql;
+
+    private final Object[] mArgs;
+
+    private final int mWindowSize;
+
+    private final int mSize;
+
+    private final Map<Integer, List<T>> mWindows = new LinkedHashMap<Integer, List<T>>(MAX_WINDOWS + 1, 1, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, List<T>> eldest) {
+            return size() > MAX_WINDOWS;
+        }
+    };
+
+    LazyList(final Ellie ellie, final Class<T> table, final String sql, final Object[] args, final int windowSize) {
+        mEllie = ellie;
+        mTable = table;
+        mSql = sql + " LIMIT ? OFFSET ?";
+        mWindowSize = windowSize;
+
+        final int argCount = args == null ? 0 : args.length;
+        mArgs = new Object[argCount + 2];
+        if (args != null) {
+            System.arraycopy(args, 0, mArgs, 0, argCount);
+        }
+        mArgs[argCount] = windowSize;
+
+        final Cursor cursor = ellie.rawQuery("SELECT COUNT(*) FROM (" + sql + ")", args);
+        try {
+            mSize = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the entity at given position, loading the window that contains it if needed.
+     *
+     * @return The entity, or null if rows were deleted since the list was created and there is no row at given
+     *         position anymore.
+     */
+    @Override
+    public synchronized T get(final int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + mSize);
+        }
+
+        final int window = location / mWindowSize;
+        List<T> entities = mWindows.get(window);
+        if (entities == null) {
+            entities = loadWindow(window);
+            mWindows.put(window, entities);
+        }
+
+        final int index = location - window * mWindowSize;
+        return index < entities.size() ? entities.get(index) : null;
+    }
+
+    private List<T> loadWindow(final int window) {
+        final Object[] args = mArgs.clone();
+        args[args.length - 1] = window * mWindowSize;
+        return mEllie.processAndCloseCursor(mTable, mEllie.rawQuery(mSql, args));
+    }
+}
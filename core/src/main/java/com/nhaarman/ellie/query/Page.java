@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.query;
+
+import com.nhaarman.ellie.Model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of entities fetched by {@link Select.From#pageAfter} or {@link Select.Where#pageAfter}, and the key to fetch
+ * the page after it.
+ *
+ * @param <T> The Model type.
+ */
+@SuppressWarnings("PublicInnerClass")
+public final class Page<T extends Model> {
+
+    private final List<T> mItems;
+
+    private final Key mNextKey;
+
+    Page(final List<T> items, final Key nextKey) {
+        mItems = Collections.unmodifiableList(items);
+        mNextKey = nextKey;
+    }
+
+    public List<T> getItems() {
+        return mItems;
+    }
+
+    /**
+     * Returns the key to pass to {@code pageAfter} for the next page, or null if this is the last page.
+     */
+    public Key getNextKey() {
+        return mNextKey;
+    }
+
+    public boolean hasNext() {
+        return mNextKey != null;
+    }
+
+    /**
+     * The position of a row in a keyset pagination: the value of the order column and the id of the last row of a
+     * page. Keys can be stored and passed to {@code pageAfter} later, for instance to restore a scroll position.
+     */
+    public static final class Key {
+
+        private final Object mValue;
+
+        private final long mId;
+
+        public Key(final Object value, final long id) {
+            mValue = value;
+            mId = id;
+        }
+
+        public Object getValue() {
+            return mValue;
+        }
+
+        public long getId() {
+            return mId;
+        }
+    }
+}
@@ -18,13 +18,33 @@
 package com.nhaarman.ellie.query;
 
 import com.nhaarman.ellie.Ellie;
+import com.nhaarman.ellie.Model;
+
+import java.util.Set;
 
 public interface Query {
 
     String getSql();
 
+    /**
+     * Returns the arguments of the query converted to Strings, as {@link android.database.sqlite.SQLiteDatabase#rawQuery}
+     * takes them.
+     */
     String[] getArgs();
 
+    /**
+     * Returns the arguments of the query as they were passed, to be bound with their SQLite type: integral numbers and
+     * booleans as integers, floating point numbers as reals, byte arrays as blobs and null as null. Other values are
+     * bound as text.
+     */
+    Object[] getBindArgs();
+
     Ellie getEllie();
 
+    /**
+     * Returns the Model classes of the tables this query reads or writes. Tables that are only referenced in raw SQL
+     * fragments, such as subqueries in a where clause, are not included.
+     */
+    Set<Class<? extends Model>> getTables();
+
 }
\ No newline at end of file
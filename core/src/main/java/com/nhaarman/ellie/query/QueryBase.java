@@ -19,11 +19,25 @@ package com.nhaarman.ellie.query;
 
 import com.nhaarman.ellie.Model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Base class of the query builders. The SQL and arguments of a builder chain are rendered in a single pass from the
+ * first builder to the last, and kept until a builder in the chain is changed.
+ */
 public abstract class QueryBase implements Query {
 
     protected Query mParent;
     protected Class<? extends Model> mTable;
 
+    private int mModCount;
+
+    private volatile Rendering mRendering;
+
     protected QueryBase(final Query parent, final Class<? extends Model> table) {
         mParent = parent;
         mTable = table;
@@ -31,28 +45,48 @@ public abstract class QueryBase implements Query {
 
     @Override
     public final String getSql() {
-        if (mParent != null) {
-            return mParent.getSql() + " " + getPartSql().trim();
-        }
-        return getPartSql().trim();
+        return render().mSql;
     }
 
     @Override
     public final String[] getArgs() {
-        if (mParent != null) {
-            return join(mParent.getArgs(), getPartArgs());
+        return toStringArray(render().mBindArgs);
+    }
+
+    @Override
+    public final Object[] getBindArgs() {
+        return clone(render().mBindArgs);
+    }
+
+    @Override
+    public final Set<Class<? extends Model>> getTables() {
+        final Set<Class<? extends Model>> tables = mParent != null ? mParent.getTables() : new HashSet<Class<? extends Model>>();
+        if (mTable != null) {
+            tables.add(mTable);
         }
-        return getPartArgs();
+        addPartTables(tables);
+        return tables;
     }
 
     protected String getPartSql() {
         return null;
     }
 
-    protected String[] getPartArgs() {
+    protected Object[] getPartArgs() {
         return null;
     }
 
+    protected void addPartTables(final Set<Class<? extends Model>> tables) {
+    }
+
+    /**
+     * Discards the rendered SQL of this builder and of the builders that follow it. Must be called when a change to
+     * this builder changes its SQL or arguments.
+     */
+    protected final void invalidate() {
+        mModCount++;
+    }
+
     protected final String[] toStringArray(final Object[] array) {
         if (array == null) {
             return null;
@@ -64,24 +98,88 @@ public abstract class QueryBase implements Query {
         return transformedArray;
     }
 
-    private  String[] join(final String[] array1, final String... array2) {
-        if (array1 == null) {
-            return clone(array2);
+    /**
+     * Returns the arguments without copying them, for use by the builders that run the query.
+     */
+    final Object[] getRenderedBindArgs() {
+        return render().mBindArgs;
+    }
+
+    private Rendering render() {
+        final int modCount = getChainModCount();
+        Rendering rendering = mRendering;
+        if (rendering == null || rendering.mModCount != modCount || modCount < 0) {
+            final StringBuilder sql = new StringBuilder();
+            final List<Object> bindArgs = new ArrayList<>();
+            final boolean hasArgs = render(sql, bindArgs);
+            rendering = new Rendering(sql.toString(), hasArgs ? bindArgs.toArray() : null, modCount);
+            mRendering = rendering;
         }
-        if (array2 == null) {
-            return clone(array1);
+        return rendering;
+    }
+
+    private boolean render(final StringBuilder sql, final List<Object> bindArgs) {
+        boolean hasArgs = false;
+        if (mParent instanceof QueryBase) {
+            hasArgs = ((QueryBase) mParent).render(sql, bindArgs);
+        } else if (mParent != null) {
+            sql.append(mParent.getSql());
+            final Object[] parentArgs = mParent.getBindArgs();
+            if (parentArgs != null) {
+                Collections.addAll(bindArgs, parentArgs);
+                hasArgs = true;
+            }
         }
 
-        final String[] joinedArray = new String[array1.length + array2.length];
-        System.arraycopy(array1, 0, joinedArray, 0, array1.length);
-        System.arraycopy(array2, 0, joinedArray, array1.length, array2.length);
-        return joinedArray;
+        if (mParent != null) {
+            sql.append(' ');
+        }
+        sql.append(getPartSql().trim());
+
+        final Object[] partArgs = getPartArgs();
+        if (partArgs != null) {
+            Collections.addAll(bindArgs, partArgs);
+            hasArgs = true;
+        }
+        return hasArgs;
     }
 
-    private String[] clone(final String[] array) {
+    /**
+     * Returns the sum of the modification counts of the builders in the chain, which only grows when one of them
+     * changes, or -1 if the chain contains a Query that is not a QueryBase and can therefore not be tracked.
+     */
+    private int getChainModCount() {
+        int modCount = 0;
+        Query query = this;
+        while (query != null) {
+            if (!(query instanceof QueryBase)) {
+                return -1;
+            }
+            modCount += ((QueryBase) query).mModCount;
+            query = ((QueryBase) query).mParent;
+        }
+        return modCount;
+    }
+
+    private static Object[] clone(final Object[] array) {
         if (array == null) {
             return null;
         }
         return array.clone();
     }
+
+    private static final class Rendering {
+
+        private final String mSql;
+
+        private final Object[] mBindArgs;
+
+        private final int mModCount;
+
+        Rendering(final String sql, final Object[] bindArgs, final int modCount) {
+            mSql = sql;
+            mBindArgs = bindArgs;
+            mModCount = modCount;
+        }
+    }
 }
@@ -17,23 +17,132 @@
 
 package com.nhaarman.ellie.query;
 
+import com.nhaarman.ellie.CursorIterator;
 import com.nhaarman.ellie.Model;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import rx.Observable;
+import rx.functions.Action1;
 
 public interface ResultQuery extends ExecutableQuery {
 
     <T extends Model> List<T> fetch();
 
+    /**
+     * Runs {@link #fetch()} on a reader thread of the {@link com.nhaarman.ellie.QueryExecutor}.
+     *
+     * @return A Future for the result.
+     */
+    <T extends Model> Future<List<T>> fetchAsync();
+
     <T extends Model> T fetchSingle();
 
     <T> T fetchValue(Class<T> type);
 
+    /**
+     * Builds the SQL of this query once, and returns a {@link CompiledQuery} that runs it with new arguments on
+     * every execution.
+     */
+    <T extends Model> CompiledQuery<T> compile();
+
+    /**
+     * Counts the results of the query and returns a List of them that loads its entities in windows of
+     * {@link LazyList#DEFAULT_WINDOW_SIZE} rows when they are accessed. The query must not have a limit.
+     *
+     * @throws IllegalStateException if the query has a limit.
+     */
+    <T extends Model> LazyList<T> fetchLazy();
+
+    /**
+     * Counts the results of the query and returns a List of them that loads its entities in windows of given size when
+     * they are accessed.
+     *
+     * @param windowSize The number of rows to load at once.
+     *
+     * @throws IllegalStateException if the query has a limit.
+     */
+    <T extends Model> LazyList<T> fetchLazy(int windowSize);
+
+    /**
+     * Runs the query and returns an iterator that loads the resulting entities one row at a time, using the entity
+     * cache. The iterator must be closed if it is not iterated to the end.
+     */
+    <T extends Model> CursorIterator<T> iterate();
+
+    /**
+     * Runs the query and returns an iterator that loads the resulting entities one row at a time. The iterator must be
+     * closed if it is not iterated to the end.
+     *
+     * @param useCache Whether to reuse cached instances and cache the loaded entities. Skipping the cache keeps
+     *                 exports over large tables from evicting the entities in use.
+     */
+    <T extends Model> CursorIterator<T> iterate(boolean useCache);
+
+    /**
+     * Runs the query and calls given action for every resulting entity, one row at a time, using the entity cache.
+     */
+    <T extends Model> void forEach(Action1<? super T> action);
+
+    /**
+     * Runs the query and calls given action for every resulting entity, one row at a time.
+     *
+     * @param useCache Whether to reuse cached instances and cache the loaded entities.
+     */
+    <T extends Model> void forEach(Action1<? super T> action, boolean useCache);
+
     <T extends Model> Observable<List<T>> observable();
 
     <T extends Model> Observable<T> observableSingle();
 
+    /**
+     * Creates an Observable that emits the resulting entities one row at a time, using the entity cache. Rows are only
+     * loaded as they are requested by the subscriber. The cursor is closed on completion, on error and on
+     * unsubscription.
+     */
+    <T extends Model> Observable<T> observableStream();
+
+    /**
+     * Creates an Observable that emits the resulting entities one row at a time, honoring backpressure.
+     *
+     * @param useCache Whether to reuse cached instances and cache the loaded entities.
+     */
+    <T extends Model> Observable<T> observableStream(boolean useCache);
+
     <T> Observable<T> observableValue(Class<T> type);
+
+    /**
+     * Creates an Observable that emits the result of {@link #fetch()}, and emits it again whenever one of the tables
+     * of this query changes. Changes in quick succession, such as the writes of one transaction, cause a single
+     * re-query; under a steady stream of writes, the query still runs at regular intervals. The Observable does not
+     * complete.
+     */
+    <T extends Model> Observable<List<T>> observableLive();
+
+    /**
+     * Creates an Observable that emits the result of {@link #fetchSingle()}, and emits it again whenever one of the
+     * tables of this query changes.
+     *
+     * @see #observableLive()
+     */
+    <T extends Model> Observable<T> observableSingleLive();
+
+    /**
+     * Creates an Observable that emits the result of {@link #fetchValue(Class)}, and emits it again whenever one of
+     * the tables of this query changes.
+     *
+     * @see #observableLive()
+     */
+    <T> Observable<T> observableValueLive(Class<T> type);
+
+    /**
+     * Creates an Observable that emits the result of this query as a {@link ChangeSet} in which every row is
+     * inserted, and then emits a ChangeSet against the previous result whenever one of the tables of this query
+     * changes. Rows are compared by id and by a signature of their values, so only inserted and updated rows are
+     * loaded again. The query must return each row of its Model at most once.
+     *
+     * @see #observableLive()
+     */
+    <T extends Model> Observable<ChangeSet<T>> observableChanges();
 }
@@ -18,20 +18,69 @@
 package com.nhaarman.ellie.query;
 
 import android.database.Cursor;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
 
+import com.nhaarman.ellie.CursorIterator;
 import com.nhaarman.ellie.Ellie;
 import com.nhaarman.ellie.Model;
+import com.nhaarman.ellie.ModelRepository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import rx.Observable;
+import rx.Producer;
+import rx.Scheduler;
 import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.subscriptions.Subscriptions;
 
 import static rx.Observable.OnSubscribe;
 
 @SuppressWarnings("ParameterNameDiffersFromOverriddenParameter")
 public abstract class ResultQueryBase extends ExecutableQueryBase implements ResultQuery {
 
+    /**
+     * The interval in which table changes are collected before a live query runs again.
+     */
+    private static final long LIVE_QUERY_INTERVAL_MILLIS = 50;
+
+    private static final String SELECT = "SELECT ";
+
+    /**
+     * The aliases under which {@link #fetchPage} selects the key of each row.
+     */
+    private static final String PAGE_KEY_COLUMN = "ellie_page_key";
+    private static final String PAGE_ID_COLUMN = "ellie_page_id";
+
+    /**
+     * Matches a SELECT whose result rows are not the rows of its tables, to which {@link #fetchPage} cannot add the
+     * key columns.
+     */
+    private static final Pattern DISTINCT_SELECT = Pattern.compile("^SELECT\\s+(DISTINCT|ALL)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Comparator<ChangeSet.Change> POSITION_COMPARATOR = new Comparator<ChangeSet.Change>() {
+        @Override
+        public int compare(final ChangeSet.Change lhs, final ChangeSet.Change rhs) {
+            return lhs.getPosition() < rhs.getPosition() ? -1 : lhs.getPosition() == rhs.getPosition() ? 0 : 1;
+        }
+    };
+
     private Ellie mEllie;
 
     protected ResultQueryBase(final Query parent, final Class<? extends Model> table) {
@@ -50,12 +99,24 @@ public abstract class ResultQueryBase extends ExecutableQueryBase implements Res
 
     @Override
     public <T extends Model> List<T> fetch() {
-        return (List<T>) rawQuery(mEllie, mTable, getSql(), getArgs());
+        return (List<T>) mEllie.processAndCloseCursor(mTable, mEllie.rawQuery(getSql(), getRenderedBindArgs()));
+    }
+
+    @Override
+    public <T extends Model> Future<List<T>> fetchAsync() {
+        return mEllie.getQueryExecutor().read(
+                new Callable<List<T>>() {
+                    @Override
+                    public List<T> call() {
+                        return fetch();
+                    }
+                }
+        );
     }
 
     @Override
     public <T extends Model> T fetchSingle() {
-        List<T> results = (List<T>) rawQuery(mEllie, mTable, getSql(), getArgs());
+        List<T> results = (List<T>) mEllie.processAndCloseCursor(mTable, mEllie.rawQuery(getSql(), getRenderedBindArgs()));
         if (!results.isEmpty()) {
             return results.get(0);
         }
@@ -64,7 +125,7 @@ public abstract class ResultQueryBase extends ExecutableQueryBase implements Res
 
     @Override
     public <T> T fetchValue(final Class<T> type) {
-        final Cursor cursor = mEllie.getDatabase().rawQuery(getSql(), getArgs());
+        final Cursor cursor = mEllie.rawQuery(getSql(), getRenderedBindArgs());
         if (!cursor.moveToFirst()) {
             return null;
         }
@@ -94,19 +155,185 @@ public abstract class ResultQueryBase extends ExecutableQueryBase implements Res
         return null;
     }
 
+    @Override
+    public <T extends Model> CompiledQuery<T> compile() {
+        return new CompiledQuery<>(mEllie, (Class<T>) mTable, getSql(), getBindArgs(), getTables());
+    }
+
+    @Override
+    public <T extends Model> LazyList<T> fetchLazy() {
+        return fetchLazy(LazyList.DEFAULT_WINDOW_SIZE);
+    }
+
+    @Override
+    public <T extends Model> LazyList<T> fetchLazy(final int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize <= 0");
+        }
+        if (isLimited()) {
+            throw new IllegalStateException("fetchLazy() limits the query itself, it cannot be used after limit().");
+        }
+        return new LazyList<>(mEllie, (Class<T>) mTable, getSql(), getRenderedBindArgs(), windowSize);
+    }
+
+    /**
+     * Runs the query, which must be ordered by {@code orderColumn} and {@code idColumn} and limited to
+     * {@code pageSize} rows, and returns the resulting page. Both key columns are selected under their own alias, so
+     * the next key is read correctly from joins that share column names and from expressions. The key columns would
+     * change the rows of a {@code SELECT DISTINCT}, so such queries are rejected.
+     */
+    <T extends Model> Page<T> fetchPage(final String orderColumn, final String idColumn, final int pageSize) {
+        final String sql = getSql();
+        if (!sql.startsWith(SELECT)) {
+            throw new IllegalStateException("Not a SELECT query: " + sql);
+        }
+        if (DISTINCT_SELECT.matcher(sql).find()) {
+            throw new IllegalStateException("pageAfter() cannot be used with SELECT DISTINCT or SELECT ALL: " + sql);
+        }
+
+        final String pageSql = SELECT + orderColumn + " AS " + PAGE_KEY_COLUMN + ", " + idColumn + " AS " + PAGE_ID_COLUMN + ", "
+                + sql.substring(SELECT.length());
+        final Cursor cursor = mEllie.rawQuery(pageSql, getRenderedBindArgs());
+        try {
+            final List<T> items = mEllie.processCursor((Class<T>) mTable, cursor);
+            Page.Key nextKey = null;
+            if (items.size() == pageSize && cursor.moveToLast()) {
+                nextKey = new Page.Key(
+                        getValue(cursor, cursor.getColumnIndexOrThrow(PAGE_KEY_COLUMN)),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(PAGE_ID_COLUMN))
+                );
+            }
+            return new Page<>(items, nextKey);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public <T extends Model> CursorIterator<T> iterate() {
+        return iterate(true);
+    }
+
+    @Override
+    public <T extends Model> CursorIterator<T> iterate(final boolean useCache) {
+        return mEllie.iterateCursor((Class<T>) mTable, mEllie.rawQuery(getSql(), getRenderedBindArgs()), useCache);
+    }
+
+    @Override
+    public <T extends Model> void forEach(final Action1<? super T> action) {
+        forEach(action, true);
+    }
+
+    @Override
+    public <T extends Model> void forEach(final Action1<? super T> action, final boolean useCache) {
+        final CursorIterator<T> iterator = iterate(useCache);
+        try {
+            for (T entity : iterator) {
+                action.call(entity);
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
     @Override
     public <T extends Model> Observable<List<T>> observable() {
-        return Observable.create(new ListOnSubscribe<T>());
+        return Observable.create(new ListOnSubscribe<T>()).subscribeOn(getReadScheduler());
     }
 
     @Override
     public <T extends Model> Observable<T> observableSingle() {
-        return Observable.create(new ModelOnSubscribe<T>());
+        return Observable.create(new ModelOnSubscribe<T>()).subscribeOn(getReadScheduler());
+    }
+
+    @Override
+    public <T extends Model> Observable<T> observableStream() {
+        return observableStream(true);
+    }
+
+    @Override
+    public <T extends Model> Observable<T> observableStream(final boolean useCache) {
+        return Observable.create(new StreamOnSubscribe<T>(useCache)).subscribeOn(getReadScheduler());
     }
 
     @Override
     public <T> Observable<T> observableValue(final Class<T> type) {
-        return Observable.create(new ValueOnSubscribe<>(type));
+        return Observable.create(new ValueOnSubscribe<>(type)).subscribeOn(getReadScheduler());
+    }
+
+    @Override
+    public <T extends Model> Observable<List<T>> observableLive() {
+        return live(this.<T>observable());
+    }
+
+    @Override
+    public <T extends Model> Observable<T> observableSingleLive() {
+        return live(this.<T>observableSingle());
+    }
+
+    @Override
+    public <T> Observable<T> observableValueLive(final Class<T> type) {
+        return live(observableValue(type));
+    }
+
+    @Override
+    public <T extends Model> Observable<ChangeSet<T>> observableChanges() {
+        return Observable.defer(
+                new Func0<Observable<ChangeSet<T>>>() {
+                    @Override
+                    public Observable<ChangeSet<T>> call() {
+                        return live(Observable.create(new ChangeSetOnSubscribe<T>()).subscribeOn(getReadScheduler()));
+                    }
+                }
+        );
+    }
+
+    /**
+     * Returns whether the query already limits the number of rows it returns.
+     */
+    protected boolean isLimited() {
+        return mParent instanceof ResultQueryBase && ((ResultQueryBase) mParent).isLimited();
+    }
+
+    /**
+     * Selects do not change any table.
+     */
+    @Override
+    protected void notifyTableChanged() {
+    }
+
+    /**
+     * Returns the Scheduler the query Observables subscribe on by default.
+     */
+    private Scheduler getReadScheduler() {
+        return mEllie.getQueryExecutor().getReadScheduler();
+    }
+
+    /**
+     * Subscribes to given query once, and again after the tables of this query change. Changes are sampled, so the
+     * query runs at most once per {@link #LIVE_QUERY_INTERVAL_MILLIS}, at the end of each interval that had a change,
+     * also while writes keep arriving. The table changes are subscribed to before the first query runs, so that no
+     * change can be missed in between.
+     */
+    private <R> Observable<R> live(final Observable<R> query) {
+        final Set<Class<? extends Model>> tables = getTables();
+        final Func1<Class<? extends Model>, Boolean> isQueried = new Func1<Class<? extends Model>, Boolean>() {
+            @Override
+            public Boolean call(final Class<? extends Model> table) {
+                return tables.contains(table);
+            }
+        };
+        final Func1<Class<? extends Model>, Observable<R>> toQuery = new Func1<Class<? extends Model>, Observable<R>>() {
+            @Override
+            public Observable<R> call(final Class<? extends Model> table) {
+                return query;
+            }
+        };
+
+        final Observable<Class<? extends Model>> changes = mEllie.getTableChanges()
+                                                                 .filter(isQueried)
+                                                                 .throttleLast(LIVE_QUERY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, getReadScheduler());
+        return Observable.merge(changes, Observable.<Class<? extends Model>>just(mTable)).concatMap(toQuery);
     }
 
     private class ListOnSubscribe<T extends Model> implements OnSubscribe<List<T>> {
@@ -150,4 +377,245 @@ public abstract class ResultQueryBase extends ExecutableQueryBase implements Res
             }
         }
     }
+
+    private class StreamOnSubscribe<T extends Model> implements OnSubscribe<T> {
+
+        private final boolean mUseCache;
+
+        private StreamOnSubscribe(final boolean useCache) {
+            mUseCache = useCache;
+        }
+
+        @Override
+        public void call(final Subscriber<? super T> subscriber) {
+            final CursorIterator<T> iterator = iterate(mUseCache);
+            subscriber.add(
+                    Subscriptions.create(
+                            new Action0() {
+                                @Override
+                                public void call() {
+                                    synchronized (iterator) {
+                                        iterator.close();
+                                    }
+                                }
+                            }
+                    )
+            );
+            final Scheduler.Worker worker = getReadScheduler().createWorker();
+            subscriber.add(worker);
+            subscriber.setProducer(new CursorProducer<>(iterator, subscriber, worker));
+        }
+    }
+
+    /**
+     * Emits a row for every requested item. Rows are read on a worker of the read scheduler, rather than on the thread
+     * that requests them, such as the thread of a downstream {@code observeOn}. Only the request that raises the
+     * requested count from zero schedules the worker, so rows are emitted serially. The iterator is locked while
+     * reading a row, so that an unsubscription from another thread cannot close the cursor halfway.
+     */
+    private static class CursorProducer<T extends Model> implements Producer {
+
+        private final AtomicLong mRequested = new AtomicLong();
+
+        private final CursorIterator<T> mIterator;
+
+        private final Subscriber<? super T> mSubscriber;
+
+        private final Scheduler.Worker mWorker;
+
+        private CursorProducer(final CursorIterator<T> iterator, final Subscriber<? super T> subscriber, final Scheduler.Worker worker) {
+            mIterator = iterator;
+            mSubscriber = subscriber;
+            mWorker = worker;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                return;
+            }
+
+            long requested;
+            long next;
+            do {
+                requested = mRequested.get();
+                next = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            }
+            while (!mRequested.compareAndSet(requested, next));
+
+            if (requested == 0) {
+                final long initiallyRequested = next;
+                mWorker.schedule(
+                        new Action0() {
+                            @Override
+                            public void call() {
+                                drain(initiallyRequested);
+                            }
+                        }
+                );
+            }
+        }
+
+        private void drain(final long initiallyRequested) {
+            long requested = initiallyRequested;
+            while (true) {
+                long emitted = 0;
+                while (emitted != requested) {
+                    final T entity;
+                    try {
+                        synchronized (mIterator) {
+                            if (mSubscriber.isUnsubscribed()) {
+                                mIterator.close();
+                                return;
+                            }
+                            entity = mIterator.hasNext() ? mIterator.next() : null;
+                        }
+                    } catch (RuntimeException e) {
+                        mIterator.close();
+                        mSubscriber.onError(e);
+                        return;
+                    }
+
+                    if (entity == null) {
+                        mSubscriber.onCompleted();
+                        return;
+                    }
+
+                    mSubscriber.onNext(entity);
+                    emitted++;
+                }
+
+                if (requested != Long.MAX_VALUE) {
+                    requested = mRequested.addAndGet(-emitted);
+                    if (requested == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the query and emits the changes against the result of the previous run, if any. Each subscription to
+     * {@link #observableChanges()} has its own instance. Runs are serialized by {@link #live(Observable)}.
+     */
+    private class ChangeSetOnSubscribe<T extends Model> implements OnSubscribe<ChangeSet<T>> {
+
+        private long[] mIds;
+
+        private long[] mSignatures;
+
+        private List<T> mEntities;
+
+        @Override
+        public void call(final Subscriber<? super ChangeSet<T>> subscriber) {
+            final ChangeSet<T> changeSet;
+            final Cursor cursor = mEllie.rawQuery(getSql(), getRenderedBindArgs());
+            try {
+                changeSet = update(cursor);
+            } finally {
+                cursor.close();
+            }
+
+            if (changeSet != null && !subscriber.isUnsubscribed()) {
+                subscriber.onNext(changeSet);
+            }
+            subscriber.onCompleted();
+        }
+
+        /**
+         * Compares the rows of given cursor to the previous result, and loads the inserted and updated rows.
+         *
+         * @return The changes, or null if the result did not change.
+         */
+        private ChangeSet<T> update(final Cursor cursor) {
+            final ModelRepository<T> repository = (ModelRepository<T>) mEllie.getModelRepository(mTable);
+            final boolean initial = mIds == null;
+
+            final Map<Long, Integer> previousPositions = new HashMap<>(initial ? 0 : mIds.length * 2);
+            if (!initial) {
+                for (int i = 0; i < mIds.length; i++) {
+                    previousPositions.put(mIds[i], i);
+                }
+            }
+
+            final int count = cursor.getCount();
+            final long[] ids = new long[count];
+            final long[] signatures = new long[count];
+            final List<T> entities = new ArrayList<>(count);
+            final List<ChangeSet.Change> inserted = new ArrayList<>();
+            final List<ChangeSet.Change> updated = new ArrayList<>();
+
+            if (cursor.moveToFirst()) {
+                final int[] columnIndexes = repository.getColumnIndexes(cursor);
+                final int idColumnIndex = cursor.getColumnIndex(Model.COLUMN_ID);
+                int position = 0;
+                do {
+                    final long id = cursor.getLong(idColumnIndex);
+                    final long signature = repository.getSignature(cursor, columnIndexes);
+                    final Integer previousPosition = previousPositions.remove(id);
+
+                    T entity;
+                    if (previousPosition != null && mSignatures[previousPosition] == signature) {
+                        entity = mEntities.get(previousPosition);
+                    } else {
+                        entity = repository.getEntity(id);
+                        if (entity == null) {
+                            entity = repository.newInstance();
+                        }
+                        repository.load(entity, cursor, columnIndexes);
+                        repository.putEntity(entity);
+
+                        if (previousPosition == null) {
+                            inserted.add(new ChangeSet.Change(id, position));
+                        } else {
+                            updated.add(new ChangeSet.Change(id, position));
+                        }
+                    }
+
+                    ids[position] = id;
+                    signatures[position] = signature;
+                    entities.add(entity);
+                    position++;
+                }
+                while (cursor.moveToNext());
+            }
+
+            final List<ChangeSet.Change> removed = new ArrayList<>(previousPositions.size());
+            for (Map.Entry<Long, Integer> entry : previousPositions.entrySet()) {
+                removed.add(new ChangeSet.Change(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(removed, POSITION_COMPARATOR);
+
+            final boolean moved = !initial && !Arrays.equals(ids, mIds);
+            mIds = ids;
+            mSignatures = signatures;
+            mEntities = entities;
+
+            final ChangeSet<T> changeSet = new ChangeSet<>(entities, inserted, updated, removed);
+            return initial || moved || !changeSet.isEmpty() ? changeSet : null;
+        }
+    }
+
+    /**
+     * Reads a column value with its SQLite type, so it is bound with the same type when used as an argument.
+     */
+    private static Object getValue(final Cursor cursor, final int columnIndex) {
+        if (VERSION.SDK_INT < VERSION_CODES.HONEYCOMB) {
+            return cursor.getString(columnIndex);
+        }
+
+        switch (cursor.getType(columnIndex)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(columnIndex);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(columnIndex);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(columnIndex);
+            default:
+                return cursor.getString(columnIndex);
+        }
+    }
 }
@@ -25,6 +25,7 @@ import com.nhaarman.ellie.query.Select.Join.Type;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @SuppressWarnings({"HardCodedStringLiteral", "PublicInnerClass"})
 public final class Select extends QueryBase {
@@ -45,6 +46,7 @@ public final class Select extends QueryBase {
 
     public Select with(final Ellie ellie) {
         mEllie = ellie;
+        invalidate();
         return this;
     }
 
@@ -70,6 +72,48 @@ public final class Select extends QueryBase {
         return mEllie;
     }
 
+    /**
+     * Builds the query for a page of a keyset pagination on top of given From clause, and fetches it.
+     */
+    private static <T extends Model> Page<T> seekPage(final From from, final String where, final Object[] whereArgs, final String orderColumn, final Page.Key after, final int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize <= 0");
+        }
+
+        final Ellie ellie = from.getEllie();
+        final String idColumn = ellie.getTableName(from.mTable) + "." + Model.COLUMN_ID;
+
+        String condition = where;
+        Object[] args = whereArgs;
+        if (after != null) {
+            final String keyCondition;
+            final Object[] keyArgs;
+            if (ellie.supportsRowValues()) {
+                keyCondition = "(" + orderColumn + ", " + idColumn + ") > (?, ?)";
+                keyArgs = new Object[]{after.getValue(), after.getId()};
+            } else {
+                keyCondition = "(" + orderColumn + " > ? OR (" + orderColumn + " = ? AND " + idColumn + " > ?))";
+                keyArgs = new Object[]{after.getValue(), after.getValue(), after.getId()};
+            }
+
+            if (where == null) {
+                condition = keyCondition;
+                args = keyArgs;
+            } else {
+                condition = "(" + where + ") AND " + keyCondition;
+                args = new Object[(whereArgs == null ? 0 : whereArgs.length) + keyArgs.length];
+                if (whereArgs != null) {
+                    System.arraycopy(whereArgs, 0, args, 0, whereArgs.length);
+                }
+                System.arraycopy(keyArgs, 0, args, args.length - keyArgs.length, keyArgs.length);
+            }
+        }
+
+        final String orderBy = orderColumn + ", " + idColumn;
+        final OrderBy query = condition == null ? from.orderBy(orderBy) : from.where(condition, args).orderBy(orderBy);
+        return query.limit(String.valueOf(pageSize)).fetchPage(orderColumn, idColumn, pageSize);
+    }
+
     public static final class From extends ResultQueryBase {
 
         private final List<Join> mJoins = new ArrayList<>();
@@ -138,9 +182,27 @@ public final class Select extends QueryBase {
             return new Limit(this, mTable, limit);
         }
 
+        /**
+         * Fetches a page of entities ordered by {@code orderColumn} and then by id, both ascending, that come after
+         * given key. Unlike {@code OFFSET}, which steps over all preceding rows, this seeks to the key directly, so
+         * the cost of a page does not depend on its position when {@code orderColumn} is indexed. The query must
+         * select the rows of its tables: the key columns that are selected along with the columns would change
+         * {@code DISTINCT} rows and aggregates.
+         *
+         * @param orderColumn The column or expression to order by, which must not be NULL for any row.
+         * @param after       The next key of the previous page, or null to fetch the first page.
+         * @param pageSize    The maximum number of entities in the page.
+         *
+         * @throws IllegalStateException if the query selects {@code DISTINCT} rows.
+         */
+        public <T extends Model> Page<T> pageAfter(final String orderColumn, final Page.Key after, final int pageSize) {
+            return seekPage(this, null, null, orderColumn, after, pageSize);
+        }
+
         private Join addJoin(final Class<? extends Model> table, final Type type) {
             final Join join = new Join(this, table, type);
             mJoins.add(join);
+            invalidate();
             return join;
         }
 
@@ -157,6 +219,13 @@ public final class Select extends QueryBase {
             return builder.toString();
         }
 
+        @Override
+        protected void addPartTables(final Set<Class<? extends Model>> tables) {
+            for (Join join : mJoins) {
+                tables.add(join.mTable);
+            }
+        }
+
         @Override
         public Ellie getEllie() {
             return mParent.getEllie();
@@ -199,11 +268,13 @@ public final class Select extends QueryBase {
 
         public From on(final String constraint) {
             mConstraint = "ON " + constraint;
+            ((From) mParent).invalidate();
             return (From) mParent;
         }
 
         public From using(final String... columns) {
             mConstraint = "USING (" + TextUtils.join(", ", columns) + ")";
+            ((From) mParent).invalidate();
             return (From) mParent;
         }
 
@@ -241,14 +312,31 @@ public final class Select extends QueryBase {
             return new Limit(this, mTable, limits);
         }
 
+        /**
+         * Fetches a page of the entities that match this clause, ordered by {@code orderColumn} and then by id, both
+         * ascending, that come after given key. Unlike {@code OFFSET}, which steps over all preceding rows, this seeks
+         * to the key directly, so the cost of a page does not depend on its position when {@code orderColumn} is
+         * indexed. The query must select the rows of its tables: the key columns that are selected along with the
+         * columns would change {@code DISTINCT} rows and aggregates.
+         *
+         * @param orderColumn The column or expression to order by, which must not be NULL for any row.
+         * @param after       The next key of the previous page, or null to fetch the first page.
+         * @param pageSize    The maximum number of entities in the page.
+         *
+         * @throws IllegalStateException if the query selects {@code DISTINCT} rows.
+         */
+        public <T extends Model> Page<T> pageAfter(final String orderColumn, final Page.Key after, final int pageSize) {
+            return seekPage((From) mParent, mWhere, mWhereArgs, orderColumn, after, pageSize);
+        }
+
         @Override
         public String getPartSql() {
             return "WHERE " + mWhere;
         }
 
         @Override
-        public String[] getPartArgs() {
-            return toStringArray(mWhereArgs);
+        public Object[] getPartArgs() {
+            return mWhereArgs;
         }
 
         @Override
@@ -360,6 +448,11 @@ public final class Select extends QueryBase {
             return "LIMIT " + mLimit;
         }
 
+        @Override
+        protected boolean isLimited() {
+            return true;
+        }
+
         @Override
         public Ellie getEllie() {
             return mParent.getEllie();
@@ -32,6 +32,7 @@ public final class Update extends QueryBase {
 
     public Update with(final Ellie ellie) {
         mEllie = ellie;
+        invalidate();
         return this;
     }
 
@@ -78,8 +79,8 @@ public final class Update extends QueryBase {
         }
 
         @Override
-        public String[] getPartArgs() {
-            return toStringArray(mSetArgs);
+        public Object[] getPartArgs() {
+            return mSetArgs;
         }
 
         @Override
@@ -105,8 +106,8 @@ public final class Update extends QueryBase {
         }
 
         @Override
-        public String[] getPartArgs() {
-            return toStringArray(mWhereArgs);
+        public Object[] getPartArgs() {
+            return mWhereArgs;
         }
 
         @Override
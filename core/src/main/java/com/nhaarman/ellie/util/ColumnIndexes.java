@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import java.util.Arrays;
+
+/**
+ * The indexes of a model's columns in a cursor projection. Instances are immutable, so a repository can publish the
+ * indexes of the last projection it saw through a volatile field, and readers on any thread can reuse them without
+ * locking.
+ */
+public final class ColumnIndexes {
+
+    private final String[] mColumnNames;
+
+    private final int[] mIndexes;
+
+    /**
+     * @param columnNames The column names of the cursor projection.
+     * @param indexes     The index of each model column in the projection, or -1 if it is not in the projection.
+     */
+    public ColumnIndexes(final String[] columnNames, final int[] indexes) {
+        mColumnNames = columnNames;
+        mIndexes = indexes;
+    }
+
+    /**
+     * Returns whether these indexes were resolved for a projection with given column names.
+     */
+    public boolean matches(final String[] columnNames) {
+        return Arrays.equals(mColumnNames, columnNames);
+    }
+
+    /**
+     * Returns the index of each model column. The array is shared and must not be modified.
+     */
+    public int[] getIndexes() {
+        return mIndexes;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import java.util.Arrays;
+
+/**
+ * A {@link LongCache} for use by many threads at once. Keys are spread over a number of independently locked
+ * segments, so threads only contend when they access keys in the same segment.
+ * <p/>
+ * Each segment evicts using the CLOCK algorithm: a hit only marks the entry as referenced, and a full segment sweeps
+ * its entries, clearing reference marks until it finds an entry that was not referenced since the previous sweep.
+ * This approximates least recently used eviction without reordering entries on every read.
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentLongCache<V> implements LongCache<V> {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    private final int maxSize;
+
+    /**
+     * @param maxSize the maximum number of entries in the cache.
+     */
+    public ConcurrentLongCache(final int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxSize          the maximum number of entries in the cache.
+     * @param concurrencyLevel the estimated number of concurrently accessing threads.
+     */
+    public ConcurrentLongCache(final int maxSize, final int concurrencyLevel) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel <= 0");
+        }
+
+        this.maxSize = maxSize;
+
+        int segmentCount = Integer.highestOneBit(Math.min(maxSize, concurrencyLevel));
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        segmentMask = segmentCount - 1;
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public final V get(final long key) {
+        int hash = hash(key);
+        return (V) segmentFor(hash).get(key, hash);
+    }
+
+    @Override
+    public final V put(final long key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        int hash = hash(key);
+        return (V) segmentFor(hash).put(key, hash, value);
+    }
+
+    @Override
+    public final V remove(final long key) {
+        int hash = hash(key);
+        return (V) segmentFor(hash).remove(key, hash);
+    }
+
+    @Override
+    public final void evictAll() {
+        for (Segment segment : segments) {
+            segment.evictAll();
+        }
+    }
+
+    @Override
+    public final int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public final int maxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public final int hitCount() {
+        int hitCount = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hitCount += segment.hitCount;
+            }
+        }
+        return hitCount;
+    }
+
+    @Override
+    public final int missCount() {
+        int missCount = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                missCount += segment.missCount;
+            }
+        }
+        return missCount;
+    }
+
+    @Override
+    public final int putCount() {
+        int putCount = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                putCount += segment.putCount;
+            }
+        }
+        return putCount;
+    }
+
+    @Override
+    public final int evictionCount() {
+        int evictionCount = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictionCount += segment.evictionCount;
+            }
+        }
+        return evictionCount;
+    }
+
+    @Override
+    public final String toString() {
+        int hitCount = hitCount();
+        int accesses = hitCount + missCount();
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format(
+                "ConcurrentLongCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                maxSize, hitCount, accesses - hitCount, hitPercent
+        );
+    }
+
+    private Segment segmentFor(final int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    private static int hash(final long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * A bounded hash table with CLOCK eviction. Segments select by the high bits of a hash, and the table slot is
+     * selected by the low bits.
+     */
+    private static final class Segment {
+
+        private static final int NONE = -1;
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int maxSize;
+
+        /**
+         * Entry index per hash slot, or {@link #NONE} for an empty slot.
+         */
+        private int[] table;
+        private int mask;
+
+        private long[] keys;
+        private Object[] values;
+        private boolean[] referenced;
+
+        /**
+         * Links to the next free entry.
+         */
+        private int[] nextFree;
+
+        private int firstFree = NONE;
+        private int allocated;
+        private int hand;
+
+        private int size;
+
+        private int putCount;
+        private int evictionCount;
+        private int hitCount;
+        private int missCount;
+
+        Segment(final int maxSize) {
+            this.maxSize = maxSize;
+            allocate(Math.min(maxSize, INITIAL_CAPACITY));
+        }
+
+        synchronized Object get(final long key, final int hash) {
+            int slot = slotOf(key, hash);
+            if (slot == NONE) {
+                missCount++;
+                return null;
+            }
+
+            int entry = table[slot];
+            referenced[entry] = true;
+            hitCount++;
+            return values[entry];
+        }
+
+        synchronized Object put(final long key, final int hash, final Object value) {
+            putCount++;
+
+            int slot = slotOf(key, hash);
+            if (slot != NONE) {
+                int entry = table[slot];
+                Object previous = values[entry];
+                values[entry] = value;
+                referenced[entry] = true;
+                return previous;
+            }
+
+            if (size >= maxSize) {
+                evict();
+            }
+
+            int entry = newEntry();
+            keys[entry] = key;
+            values[entry] = value;
+            referenced[entry] = false;
+            insertIntoTable(entry, hash);
+            size++;
+            return null;
+        }
+
+        synchronized Object remove(final long key, final int hash) {
+            int slot = slotOf(key, hash);
+            if (slot == NONE) {
+                return null;
+            }
+
+            int entry = table[slot];
+            Object previous = values[entry];
+            removeEntry(entry, slot);
+            return previous;
+        }
+
+        synchronized void evictAll() {
+            evictionCount += size;
+
+            Arrays.fill(values, null);
+            Arrays.fill(table, NONE);
+            firstFree = NONE;
+            allocated = 0;
+            hand = 0;
+            size = 0;
+        }
+
+        /**
+         * Advances the clock hand until it points at an unreferenced entry, and removes that entry.
+         */
+        private void evict() {
+            while (true) {
+                if (hand >= allocated) {
+                    hand = 0;
+                }
+
+                int entry = hand++;
+                if (values[entry] == null) {
+                    continue;
+                }
+
+                if (referenced[entry]) {
+                    referenced[entry] = false;
+                } else {
+                    removeEntry(entry, slotOf(keys[entry], hash(keys[entry])));
+                    evictionCount++;
+                    return;
+                }
+            }
+        }
+
+        private int slotOf(final long key, final int hash) {
+            int slot = hash & mask;
+            while (table[slot] != NONE) {
+                if (keys[table[slot]] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NONE;
+        }
+
+        private void insertIntoTable(final int entry, final int hash) {
+            int slot = hash & mask;
+            while (table[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+        }
+
+        /**
+         * Clears given slot, and moves subsequent entries of the probe sequence back so that no lookup stops early
+         * at the cleared slot.
+         */
+        private void removeFromTable(final int slot) {
+            int hole = slot;
+            table[hole] = NONE;
+
+            int current = hole;
+            while (true) {
+                current = (current + 1) & mask;
+                int entry = table[current];
+                if (entry == NONE) {
+                    return;
+                }
+
+                int home = hash(keys[entry]) & mask;
+                boolean reachable = hole <= current ? hole < home && home <= current : hole < home || home <= current;
+                if (!reachable) {
+                    table[hole] = entry;
+                    table[current] = NONE;
+                    hole = current;
+                }
+            }
+        }
+
+        private void removeEntry(final int entry, final int slot) {
+            removeFromTable(slot);
+
+            values[entry] = null;
+            nextFree[entry] = firstFree;
+            firstFree = entry;
+            size--;
+        }
+
+        private int newEntry() {
+            if (firstFree != NONE) {
+                int entry = firstFree;
+                firstFree = nextFree[entry];
+                return entry;
+            }
+
+            if (allocated == keys.length) {
+                grow(Math.min(maxSize, keys.length * 2));
+            }
+            return allocated++;
+        }
+
+        private void allocate(final int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            referenced = new boolean[capacity];
+            nextFree = new int[capacity];
+            allocateTable(capacity);
+        }
+
+        private void allocateTable(final int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) << 1;
+            table = new int[tableSize];
+            Arrays.fill(table, NONE);
+            mask = tableSize - 1;
+        }
+
+        /**
+         * Grows the entry arrays to given capacity. Entries keep their index, so only the table is rebuilt.
+         */
+        private void grow(final int capacity) {
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            referenced = Arrays.copyOf(referenced, capacity);
+            nextFree = Arrays.copyOf(nextFree, capacity);
+
+            allocateTable(capacity);
+            for (int entry = 0; entry < allocated; entry++) {
+                if (values[entry] != null) {
+                    insertIntoTable(entry, hash(keys[entry]));
+                }
+            }
+        }
+    }
+}
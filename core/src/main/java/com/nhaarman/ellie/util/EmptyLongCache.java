@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link LongCache} that never holds any entries. Every {@link #get} is a miss.
+ */
+public class EmptyLongCache<V> implements LongCache<V> {
+
+    private final AtomicInteger putCount = new AtomicInteger();
+
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    @Override
+    public final V get(final long key) {
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public final V put(final long key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        putCount.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public final V remove(final long key) {
+        return null;
+    }
+
+    @Override
+    public final void evictAll() {
+    }
+
+    @Override
+    public final int size() {
+        return 0;
+    }
+
+    @Override
+    public final int maxSize() {
+        return 0;
+    }
+
+    @Override
+    public final int hitCount() {
+        return 0;
+    }
+
+    @Override
+    public final int missCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public final int putCount() {
+        return putCount.get();
+    }
+
+    @Override
+    public final int evictionCount() {
+        return 0;
+    }
+
+    @Override
+    public final String toString() {
+        return "EmptyLongCache[misses=" + missCount.get() + ']';
+    }
+}
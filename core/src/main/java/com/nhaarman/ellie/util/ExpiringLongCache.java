@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link LongCache} that expires entries a fixed time after they were put, storing them in another cache.
+ * Expired entries are removed when they are looked up, and are counted as a miss and an eviction.
+ */
+@SuppressWarnings("unchecked")
+public class ExpiringLongCache<V> implements LongCache<V> {
+
+    private final LongCache<Object> cache;
+
+    private final long ttlNanos;
+
+    private final AtomicInteger expiredCount = new AtomicInteger();
+
+    /**
+     * @param cache   the cache to store the entries in.
+     * @param ttl     the time after which an entry expires.
+     * @param ttlUnit the unit of {@code ttl}.
+     */
+    public ExpiringLongCache(final LongCache<Object> cache, final long ttl, final TimeUnit ttlUnit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl <= 0");
+        }
+
+        this.cache = cache;
+        ttlNanos = ttlUnit.toNanos(ttl);
+    }
+
+    @Override
+    public final V get(final long key) {
+        Entry<V> entry = (Entry<V>) cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isExpired(System.nanoTime())) {
+            // A concurrent put between the get and the remove is lost. That only costs a reload from the database.
+            cache.remove(key);
+            expiredCount.incrementAndGet();
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    @Override
+    public final V put(final long key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        long now = System.nanoTime();
+        return valueOf((Entry<V>) cache.put(key, new Entry<>(value, now + ttlNanos)), now);
+    }
+
+    @Override
+    public final V remove(final long key) {
+        return valueOf((Entry<V>) cache.remove(key), System.nanoTime());
+    }
+
+    @Override
+    public final void evictAll() {
+        cache.evictAll();
+    }
+
+    @Override
+    public final int size() {
+        return cache.size();
+    }
+
+    @Override
+    public final int maxSize() {
+        return cache.maxSize();
+    }
+
+    @Override
+    public final int hitCount() {
+        return cache.hitCount() - expiredCount.get();
+    }
+
+    @Override
+    public final int missCount() {
+        return cache.missCount() + expiredCount.get();
+    }
+
+    @Override
+    public final int putCount() {
+        return cache.putCount();
+    }
+
+    @Override
+    public final int evictionCount() {
+        return cache.evictionCount() + expiredCount.get();
+    }
+
+    @Override
+    public final String toString() {
+        return "ExpiringLongCache[ttl=" + ttlNanos + "ns," + cache + ']';
+    }
+
+    private V valueOf(final Entry<V> entry, final long now) {
+        return entry == null || entry.isExpired(now) ? null : entry.value;
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(final long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+/**
+ * A bounded cache keyed by primitive {@code long}s, used by the model repositories to hold loaded entities.
+ * Implementations must be safe for use by multiple threads.
+ */
+public interface LongCache<V> {
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache.
+     */
+    V get(long key);
+
+    /**
+     * Caches {@code value} for {@code key}, evicting other entries if the cache is full.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    V put(long key, V value);
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    V remove(long key);
+
+    /**
+     * Clear the cache.
+     */
+    void evictAll();
+
+    /**
+     * Returns the number of entries in the cache.
+     */
+    int size();
+
+    /**
+     * Returns the maximum number of entries in the cache.
+     */
+    int maxSize();
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was already present in the cache.
+     */
+    int hitCount();
+
+    /**
+     * Returns the number of times {@link #get} returned null.
+     */
+    int missCount();
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    int putCount();
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    int evictionCount();
+}
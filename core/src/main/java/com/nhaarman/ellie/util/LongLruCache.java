@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link LongCache} that evicts the least recently used entry, guarded by a single lock. Keys are neither boxed nor
+ * converted to Strings: entries are stored in parallel arrays, located through an open addressing hash table and
+ * ordered from least to most recently used by a doubly linked list of array indexes.
+ * <p/>
+ * The arrays grow on demand until they can hold {@code maxSize} entries, after which the least recently used entry
+ * is evicted for every new entry.
+ */
+@SuppressWarnings("unchecked")
+public class LongLruCache<V> implements LongCache<V> {
+
+    private static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Entry index per hash slot, or {@link #NONE} for an empty slot.
+     */
+    private int[] table;
+    private int mask;
+
+    private long[] keys;
+    private Object[] values;
+
+    /**
+     * Links to the entry that was used less recently, or the next free entry.
+     */
+    private int[] older;
+
+    /**
+     * Links to the entry that was used more recently.
+     */
+    private int[] newer;
+
+    private int eldest = NONE;
+    private int youngest = NONE;
+    private int firstFree = NONE;
+    private int allocated;
+
+    private int size;
+    private int maxSize;
+
+    private int putCount;
+    private int evictionCount;
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param maxSize the maximum number of entries in the cache.
+     */
+    public LongLruCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        allocate(Math.min(maxSize, INITIAL_CAPACITY));
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public synchronized void resize(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+        if (keys.length > maxSize) {
+            reallocate(Math.max(size, Math.min(maxSize, INITIAL_CAPACITY)));
+        }
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache. If a value was returned, it is moved to the head
+     * of the queue.
+     */
+    @Override
+    public final synchronized V get(final long key) {
+        int slot = slotOf(key);
+        if (slot == NONE) {
+            missCount++;
+            return null;
+        }
+
+        int entry = table[slot];
+        moveToYoungest(entry);
+        hitCount++;
+        return (V) values[entry];
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of the queue.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    @Override
+    public final synchronized V put(final long key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        putCount++;
+
+        int slot = slotOf(key);
+        if (slot != NONE) {
+            int entry = table[slot];
+            V previous = (V) values[entry];
+            values[entry] = value;
+            moveToYoungest(entry);
+            return previous;
+        }
+
+        if (size >= maxSize) {
+            removeEntry(eldest);
+            evictionCount++;
+        }
+
+        int entry = newEntry();
+        keys[entry] = key;
+        values[entry] = value;
+        linkYoungest(entry);
+        insertIntoTable(entry);
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    @Override
+    public final synchronized V remove(final long key) {
+        int slot = slotOf(key);
+        if (slot == NONE) {
+            return null;
+        }
+
+        int entry = table[slot];
+        V previous = (V) values[entry];
+        removeEntry(entry);
+        return previous;
+    }
+
+    /**
+     * Remove the eldest entries until the total of remaining entries is at or below the requested size.
+     *
+     * @param maxSize the maximum size of the cache before returning.
+     */
+    public final synchronized void trimToSize(final int maxSize) {
+        while (size > maxSize && size > 0) {
+            removeEntry(eldest);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Clear the cache.
+     */
+    @Override
+    public final void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     */
+    @Override
+    public synchronized final int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of entries in the cache.
+     */
+    @Override
+    public synchronized final int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was already present in the cache.
+     */
+    @Override
+    public synchronized final int hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null.
+     */
+    @Override
+    public synchronized final int missCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    @Override
+    public synchronized final int putCount() {
+        return putCount;
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    @Override
+    public synchronized final int evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache, ordered from least recently accessed to most recently
+     * accessed.
+     */
+    public synchronized final Map<Long, V> snapshot() {
+        Map<Long, V> result = new LinkedHashMap<>(size);
+        for (int entry = eldest; entry != NONE; entry = newer[entry]) {
+            result.put(keys[entry], (V) values[entry]);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized final String toString() {
+        int accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format(
+                "LongLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                maxSize, hitCount, missCount, hitPercent
+        );
+    }
+
+    private static int hash(final long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private int slotOf(final long key) {
+        int slot = hash(key) & mask;
+        while (table[slot] != NONE) {
+            if (keys[table[slot]] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private void insertIntoTable(final int entry) {
+        int slot = hash(keys[entry]) & mask;
+        while (table[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    /**
+     * Clears given slot, and moves subsequent entries of the probe sequence back so that no lookup stops early at
+     * the cleared slot.
+     */
+    private void removeFromTable(final int slot) {
+        int hole = slot;
+        table[hole] = NONE;
+
+        int current = hole;
+        while (true) {
+            current = (current + 1) & mask;
+            int entry = table[current];
+            if (entry == NONE) {
+                return;
+            }
+
+            int home = hash(keys[entry]) & mask;
+            boolean reachable = hole <= current ? hole < home && home <= current : hole < home || home <= current;
+            if (!reachable) {
+                table[hole] = entry;
+                table[current] = NONE;
+                hole = current;
+            }
+        }
+    }
+
+    private void removeEntry(final int entry) {
+        removeFromTable(slotOf(keys[entry]));
+        unlink(entry);
+
+        values[entry] = null;
+        older[entry] = firstFree;
+        firstFree = entry;
+        size--;
+    }
+
+    private int newEntry() {
+        if (firstFree != NONE) {
+            int entry = firstFree;
+            firstFree = older[entry];
+            return entry;
+        }
+
+        if (allocated == keys.length) {
+            reallocate(Math.min(maxSize, keys.length * 2));
+        }
+        return allocated++;
+    }
+
+    private void linkYoungest(final int entry) {
+        older[entry] = youngest;
+        newer[entry] = NONE;
+        if (youngest == NONE) {
+            eldest = entry;
+        } else {
+            newer[youngest] = entry;
+        }
+        youngest = entry;
+    }
+
+    private void unlink(final int entry) {
+        if (older[entry] == NONE) {
+            eldest = newer[entry];
+        } else {
+            newer[older[entry]] = newer[entry];
+        }
+
+        if (newer[entry] == NONE) {
+            youngest = older[entry];
+        } else {
+            older[newer[entry]] = older[entry];
+        }
+    }
+
+    private void moveToYoungest(final int entry) {
+        if (entry != youngest) {
+            unlink(entry);
+            linkYoungest(entry);
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        older = new int[capacity];
+        newer = new int[capacity];
+
+        int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) << 1;
+        table = new int[tableSize];
+        Arrays.fill(table, NONE);
+        mask = tableSize - 1;
+    }
+
+    /**
+     * Moves all entries to arrays of given capacity, compacting them in least to most recently used order.
+     */
+    private void reallocate(final int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldNewer = newer;
+        int oldEldest = eldest;
+
+        allocate(capacity);
+        eldest = NONE;
+        youngest = NONE;
+        firstFree = NONE;
+        allocated = 0;
+
+        for (int entry = oldEldest; entry != NONE; entry = oldNewer[entry]) {
+            int newEntry = allocated++;
+            keys[newEntry] = oldKeys[entry];
+            values[newEntry] = oldValues[entry];
+            linkYoungest(newEntry);
+            insertIntoTable(newEntry);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * A {@link LongCache} that holds its values through soft or weak references, and so has no fixed capacity: a value
+ * stays cached for as long as the garbage collector keeps it. Used as an identity map, it guarantees that a row maps
+ * to the same entity instance for as long as that instance is referenced elsewhere.
+ * <p/>
+ * Entries whose value was collected are purged using a {@link ReferenceQueue} on every access, and count as
+ * evictions.
+ */
+@SuppressWarnings("unchecked")
+public class ReferenceLongCache<V> implements LongCache<V> {
+
+    /**
+     * The kind of reference used to hold the values.
+     */
+    public enum ReferenceType {
+        /**
+         * Values are kept until the garbage collector needs the memory.
+         */
+        SOFT,
+        /**
+         * Values are kept only while they are strongly referenced elsewhere.
+         */
+        WEAK
+    }
+
+    private static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReferenceType referenceType;
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    /**
+     * The keys and references of the entries, by hash slot. An empty slot has a null reference.
+     */
+    private long[] keys;
+    private Reference<Object>[] references;
+    private int mask;
+
+    private int size;
+
+    private int putCount;
+    private int evictionCount;
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param referenceType the kind of reference used to hold the values.
+     */
+    public ReferenceLongCache(final ReferenceType referenceType) {
+        this.referenceType = referenceType;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public final synchronized V get(final long key) {
+        purge();
+
+        int slot = slotOf(key);
+        if (slot == NONE) {
+            missCount++;
+            return null;
+        }
+
+        V value = (V) references[slot].get();
+        if (value == null) {
+            removeAt(slot);
+            evictionCount++;
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return value;
+    }
+
+    @Override
+    public final synchronized V put(final long key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        purge();
+        putCount++;
+
+        int slot = slotOf(key);
+        if (slot != NONE) {
+            V previous = (V) references[slot].get();
+            references[slot] = newReference(key, value);
+            return previous;
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        insert(key, newReference(key, value));
+        size++;
+        return null;
+    }
+
+    @Override
+    public final synchronized V remove(final long key) {
+        purge();
+
+        int slot = slotOf(key);
+        if (slot == NONE) {
+            return null;
+        }
+
+        V previous = (V) references[slot].get();
+        removeAt(slot);
+        return previous;
+    }
+
+    @Override
+    public final synchronized void evictAll() {
+        purge();
+
+        evictionCount += size;
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of entries in the cache. Entries whose value was collected, but that were not yet purged,
+     * are included.
+     */
+    @Override
+    public final synchronized int size() {
+        purge();
+        return size;
+    }
+
+    /**
+     * Returns {@link Integer#MAX_VALUE}: the size of the cache is only bounded by the garbage collector.
+     */
+    @Override
+    public final int maxSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public final synchronized int hitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public final synchronized int missCount() {
+        return missCount;
+    }
+
+    @Override
+    public final synchronized int putCount() {
+        return putCount;
+    }
+
+    @Override
+    public final synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized final String toString() {
+        int accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format(
+                "ReferenceLongCache[referenceType=%s,hits=%d,misses=%d,hitRate=%d%%]",
+                referenceType, hitCount, missCount, hitPercent
+        );
+    }
+
+    private Reference<Object> newReference(final long key, final Object value) {
+        switch (referenceType) {
+            case SOFT:
+                return new SoftEntry(key, value, queue);
+            case WEAK:
+                return new WeakEntry(key, value, queue);
+            default:
+                throw new IllegalStateException("Unknown reference type " + referenceType);
+        }
+    }
+
+    /**
+     * Removes the entries of references that were cleared by the garbage collector. A reference that was replaced by
+     * {@link #put} or removed before it was cleared no longer matches its slot, and is ignored.
+     */
+    private void purge() {
+        Reference<?> reference;
+        while ((reference = queue.poll()) != null) {
+            int slot = slotOf(((KeyedReference) reference).getKey());
+            if (slot != NONE && references[slot] == reference) {
+                removeAt(slot);
+                evictionCount++;
+            }
+        }
+    }
+
+    private static int hash(final long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private int slotOf(final long key) {
+        int slot = hash(key) & mask;
+        while (references[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private void insert(final long key, final Reference<Object> reference) {
+        int slot = hash(key) & mask;
+        while (references[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        references[slot] = reference;
+    }
+
+    /**
+     * Clears given slot, and moves subsequent entries of the probe sequence back so that no lookup stops early at
+     * the cleared slot.
+     */
+    private void removeAt(final int slot) {
+        int hole = slot;
+        references[hole] = null;
+        size--;
+
+        int current = hole;
+        while (true) {
+            current = (current + 1) & mask;
+            if (references[current] == null) {
+                return;
+            }
+
+            int home = hash(keys[current]) & mask;
+            boolean reachable = hole <= current ? hole < home && home <= current : hole < home || home <= current;
+            if (!reachable) {
+                keys[hole] = keys[current];
+                references[hole] = references[current];
+                references[current] = null;
+                hole = current;
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        references = new Reference[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(final int capacity) {
+        long[] oldKeys = keys;
+        Reference<Object>[] oldReferences = references;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldReferences[i] != null) {
+                insert(oldKeys[i], oldReferences[i]);
+            }
+        }
+    }
+
+    private interface KeyedReference {
+
+        long getKey();
+    }
+
+    private static final class SoftEntry extends SoftReference<Object> implements KeyedReference {
+
+        private final long key;
+
+        SoftEntry(final long key, final Object value, final ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+    }
+
+    private static final class WeakEntry extends WeakReference<Object> implements KeyedReference {
+
+        private final long key;
+
+        WeakEntry(final long key, final Object value, final ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+    }
+}
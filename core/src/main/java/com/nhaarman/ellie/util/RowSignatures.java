@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.util;
+
+import android.database.Cursor;
+
+/**
+ * Computes 64-bit signatures of cursor rows without loading them into entities, by mixing the column values into a
+ * running FNV-1a hash. Two rows with equal values have equal signatures. Rows with different values have different
+ * signatures with very high probability.
+ */
+public final class RowSignatures {
+
+    /**
+     * The signature of a row without columns.
+     */
+    public static final long SEED = 0xCBF29CE484222325L;
+
+    private static final long PRIME = 0x100000001B3L;
+
+    private static final long NULL = 0x9E3779B97F4A7C15L;
+
+    private RowSignatures() {
+    }
+
+    /**
+     * Mixes the value of an integer column into given signature. Columns that are not in the projection, with an index
+     * of -1, are skipped.
+     */
+    public static long mixLong(final long signature, final Cursor cursor, final int columnIndex) {
+        if (columnIndex < 0) {
+            return signature;
+        }
+        return cursor.isNull(columnIndex) ? mix(signature, NULL) : mix(signature, cursor.getLong(columnIndex));
+    }
+
+    /**
+     * Mixes the value of a real column into given signature.
+     */
+    public static long mixDouble(final long signature, final Cursor cursor, final int columnIndex) {
+        if (columnIndex < 0) {
+            return signature;
+        }
+        return cursor.isNull(columnIndex) ? mix(signature, NULL) : mix(signature, Double.doubleToLongBits(cursor.getDouble(columnIndex)));
+    }
+
+    /**
+     * Mixes the value of a text column into given signature.
+     */
+    public static long mixString(final long signature, final Cursor cursor, final int columnIndex) {
+        if (columnIndex < 0) {
+            return signature;
+        }
+
+        final String value = cursor.getString(columnIndex);
+        if (value == null) {
+            return mix(signature, NULL);
+        }
+
+        long result = mix(signature, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            result = (result ^ value.charAt(i)) * PRIME;
+        }
+        return result;
+    }
+
+    /**
+     * Mixes the value of a blob column into given signature.
+     */
+    public static long mixBlob(final long signature, final Cursor cursor, final int columnIndex) {
+        if (columnIndex < 0) {
+            return signature;
+        }
+
+        final byte[] value = cursor.getBlob(columnIndex);
+        if (value == null) {
+            return mix(signature, NULL);
+        }
+
+        long result = mix(signature, value.length);
+        for (byte b : value) {
+            result = (result ^ (b & 0xFF)) * PRIME;
+        }
+        return result;
+    }
+
+    private static long mix(final long signature, final long value) {
+        long result = signature;
+        for (int shift = 0; shift < 64; shift += 8) {
+            result = (result ^ ((value >>> shift) & 0xFF)) * PRIME;
+        }
+        return result;
+    }
+}
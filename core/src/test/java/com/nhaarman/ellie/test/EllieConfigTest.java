@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nhaarman.ellie.test;
+
+import com.nhaarman.ellie.Ellie;
+import com.nhaarman.ellie.Ellie.CacheType;
+import com.nhaarman.ellie.Ellie.LogLevel;
+import com.nhaarman.ellie.EllieConfig;
+import com.nhaarman.ellie.EllieConfig.Synchronous;
+import com.nhaarman.ellie.EllieConfig.TempStore;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EllieConfigTest {
+
+    @Test
+    public void testDefaults() {
+        EllieConfig config = new EllieConfig.Builder().build();
+
+        assertThat(config.getCacheSize()).isEqualTo(Ellie.DEFAULT_CACHE_SIZE);
+        assertThat(config.getCacheType()).isEqualTo(CacheType.LRU);
+        assertThat(config.getLogLevel()).isEqualTo(LogLevel.NONE);
+        assertThat(config.getReaderCount()).isEqualTo(Ellie.DEFAULT_READER_COUNT);
+        assertThat(config.isWriteAheadLoggingEnabled()).isFalse();
+        assertThat(config.isNativeUpsertEnabled()).isTrue();
+        assertThat(config.getPageSize()).isNull();
+        assertThat(config.getPragmas()).isEmpty();
+    }
+
+    @Test
+    public void testBuilderSetsValues() {
+        EllieConfig config = new EllieConfig.Builder()
+                .cacheSize(16)
+                .cacheType(CacheType.CONCURRENT)
+                .logLevel(LogLevel.BASIC)
+                .readerCount(2)
+                .writeAheadLogging(true)
+                .nativeUpsert(false)
+                .build();
+
+        assertThat(config.getCacheSize()).isEqualTo(16);
+        assertThat(config.getCacheType()).isEqualTo(CacheType.CONCURRENT);
+        assertThat(config.getLogLevel()).isEqualTo(LogLevel.BASIC);
+        assertThat(config.getReaderCount()).isEqualTo(2);
+        assertThat(config.isWriteAheadLoggingEnabled()).isTrue();
+        assertThat(config.isNativeUpsertEnabled()).isFalse();
+    }
+
+    @Test
+    public void testPragmasAreInExecutionOrder() {
+        EllieConfig config = new EllieConfig.Builder()
+                .pageSize(8192)
+                .tempStore(TempStore.MEMORY)
+                .mmapSize(1048576)
+                .pageCacheSize(4096)
+                .synchronous(Synchronous.NORMAL)
+                .build();
+
+        assertThat(config.getPragmas()).containsExactly(
+                "PRAGMA synchronous=NORMAL",
+                "PRAGMA cache_size=-4096",
+                "PRAGMA mmap_size=1048576",
+                "PRAGMA temp_store=MEMORY"
+        );
+    }
+
+    @Test
+    public void testPageSizeIsNotAPragma() {
+        EllieConfig config = new EllieConfig.Builder().pageSize(8192).build();
+
+        assertThat(config.getPageSize()).isEqualTo(8192);
+        assertThat(config.getPragmas()).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReaderCountMustBePositive() {
+        new EllieConfig.Builder().readerCount(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageSizeMustBePowerOfTwo() {
+        new EllieConfig.Builder().pageSize(3000);
+    }
+}
@@ -18,19 +18,36 @@
 package com.nhaarman.ellie.test;
 
 import android.content.ContentProvider;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
+import com.nhaarman.ellie.CursorIterator;
 import com.nhaarman.ellie.Ellie;
+import com.nhaarman.ellie.EllieConfig;
+import com.nhaarman.ellie.EllieConfig.Synchronous;
 import com.nhaarman.ellie.Model;
+import com.nhaarman.ellie.ModelRepository;
+import com.nhaarman.ellie.Transaction;
+import com.nhaarman.ellie.query.ChangeSet;
+import com.nhaarman.ellie.query.CompiledQuery;
 import com.nhaarman.ellie.query.Delete;
 import com.nhaarman.ellie.query.Insert;
+import com.nhaarman.ellie.query.LazyList;
 import com.nhaarman.ellie.query.MalformedQueryException;
+import com.nhaarman.ellie.query.Page;
 import com.nhaarman.ellie.query.Query;
+import com.nhaarman.ellie.query.ResultQuery;
 import com.nhaarman.ellie.query.Select;
 import com.nhaarman.ellie.query.Update;
 import com.nhaarman.ellie.test.content.EllieSampleProvider;
+import com.nhaarman.ellie.test.model.CachedTag;
 import com.nhaarman.ellie.test.model.Note;
 import com.nhaarman.ellie.test.model.NoteTag;
 import com.nhaarman.ellie.test.model.Tag;
+import com.nhaarman.ellie.test.model.UniqueTag;
 import com.nhaarman.ellie.test.shadows.PersistentShadowSQLiteOpenHelper;
 
 import org.junit.Before;
@@ -50,7 +67,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import rx.Subscriber;
+import rx.Subscription;
 import rx.functions.Action1;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -124,6 +146,610 @@ public class EllieTest {
         assertThat(note.getId()).isGreaterThan(0l);
     }
 
+    @Test
+    public void testCreateAllEntities() {
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < NOTE_COUNT; i++) {
+            Note note = new Note();
+            note.title = "BATCH NOTE " + i;
+            note.body = "This is the body for batch note #" + i;
+            note.date = new Date();
+            notes.add(note);
+        }
+
+        Ellie.getInstance().getModelRepository(Note.class).createAll(notes);
+
+        for (Note note : notes) {
+            assertThat(note.getId()).isNotNull();
+            assertThat(note.getId()).isGreaterThan(0l);
+            assertThat(Ellie.getInstance().getModelRepository(Note.class).getEntity(note.getId())).isSameAs(note);
+        }
+    }
+
+    @Test
+    public void testFindAllEntities() {
+        ModelRepository<Note> repository = Ellie.getInstance().getModelRepository(Note.class);
+        Note cached = repository.find(2);
+
+        List<Note> notes = repository.findAll(new long[]{3, 2, 4, 3, -1});
+
+        assertThat(notes).hasSize(4);
+        assertThat(notes.get(0).getId()).isEqualTo(3l);
+        assertThat(notes.get(1)).isSameAs(cached);
+        assertThat(notes.get(2).getId()).isEqualTo(4l);
+        assertThat(notes.get(3)).isSameAs(notes.get(0));
+    }
+
+    @Test
+    public void testIterateEntities() {
+        List<Note> notes = new Select().from(Note.class).fetch();
+
+        CursorIterator<Note> iterator = new Select().from(Note.class).iterate();
+        int count = 0;
+        for (Note note : iterator) {
+            assertThat(note).isSameAs(notes.get(count));
+            count++;
+        }
+
+        assertThat(count).isEqualTo(notes.size());
+        assertThat(iterator.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testIterateEntitiesWithoutCache() {
+        Note cached = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", 2L).fetchSingle();
+
+        CursorIterator<Note> iterator = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", 2L).iterate(false);
+        try {
+            Note note = iterator.next();
+            assertThat(note).isNotSameAs(cached);
+            assertThat(note.getId()).isEqualTo(cached.getId());
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Test
+    public void testStreamEntitiesWithBackpressure() throws InterruptedException {
+        final List<Note> received = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        new Select().from(Note.class).<Note>observableStream()
+                    .subscribe(
+                            new Subscriber<Note>() {
+                                @Override
+                                public void onStart() {
+                                    request(1);
+                                }
+
+                                @Override
+                                public void onNext(final Note note) {
+                                    received.add(note);
+                                    if (received.size() == 2) {
+                                        unsubscribe();
+                                        latch.countDown();
+                                    } else {
+                                        request(1);
+                                    }
+                                }
+
+                                @Override
+                                public void onCompleted() {
+                                    latch.countDown();
+                                }
+
+                                @Override
+                                public void onError(final Throwable e) {
+                                    // The stream is delivered on a reader thread, so the failure is rethrown below.
+                                    error.set(e);
+                                    latch.countDown();
+                                }
+                            }
+                    );
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertThat(received).hasSize(2);
+    }
+
+    @Test
+    public void testStreamReadsRowsOnReaderThread() throws InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            Note note = new Note();
+            note.title = "STREAM " + i;
+            note.body = "BODY";
+            note.save();
+        }
+
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch firstRow = new CountDownLatch(1);
+        final CountDownLatch secondRow = new CountDownLatch(1);
+
+        class RowSubscriber extends Subscriber<Note> {
+
+            @Override
+            public void onStart() {
+                request(1);
+            }
+
+            @Override
+            public void onNext(final Note note) {
+                threads.add(Thread.currentThread());
+                if (threads.size() == 1) {
+                    firstRow.countDown();
+                } else {
+                    unsubscribe();
+                    secondRow.countDown();
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(final Throwable e) {
+            }
+
+            void requestRow() {
+                request(1);
+            }
+        }
+
+        RowSubscriber subscriber = new RowSubscriber();
+        new Select().from(Note.class).<Note>observableStream().subscribe(subscriber);
+        assertThat(firstRow.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // A request from this thread, like one from a downstream observeOn, must not read the row on this thread.
+        subscriber.requestRow();
+        assertThat(secondRow.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(threads.get(1)).isNotSameAs(Thread.currentThread());
+    }
+
+    @Test
+    public void testTableChanges() {
+        final List<Class<? extends Model>> changes = new ArrayList<>();
+        Subscription subscription = collectTableChanges(changes);
+
+        Tag tag = new Tag();
+        tag.name = "CHANGED TAG";
+        tag.save();
+        new Delete().from(Note.class).where(Model.COLUMN_ID + "=?", -1).execute();
+        subscription.unsubscribe();
+
+        assertThat(changes).containsExactly(Tag.class, Note.class);
+    }
+
+    @Test
+    public void testUpdateOnlyWritesChangedEntities() {
+        final List<Class<? extends Model>> changes = new ArrayList<>();
+        Subscription subscription = collectTableChanges(changes);
+
+        Note note = new Select().from(Note.class).fetchSingle();
+        note.save();
+        assertThat(changes).isEmpty();
+
+        note.body = "CHANGED BODY";
+        note.save();
+        subscription.unsubscribe();
+
+        assertThat(changes).containsExactly(Note.class);
+        CursorIterator<Note> iterator = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", note.getId()).iterate(false);
+        try {
+            assertThat(iterator.next().body).isEqualTo("CHANGED BODY");
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Test
+    public void testUpdateOfLoadedEntityOnlyWritesChangedColumns() {
+        SQLiteDatabase database = Ellie.getInstance().getDatabase();
+        database.execSQL("CREATE TEMP TABLE updatedColumns (name TEXT)");
+        for (String column : new String[]{Note.TITLE, Note.BODY}) {
+            database.execSQL(
+                    "CREATE TEMP TRIGGER " + column + "Updated AFTER UPDATE OF " + column + " ON notes "
+                            + "BEGIN INSERT INTO updatedColumns VALUES ('" + column + "'); END"
+            );
+        }
+
+        try {
+            long id = new Select().from(Note.class).<Note>fetchSingle().getId();
+            Note note = Ellie.getInstance().getModelRepository(Note.class).find(id);
+            note.title = "ONLY THE TITLE";
+            note.save();
+
+            assertThat(DatabaseUtils.stringForQuery(database, "SELECT group_concat(name) FROM updatedColumns", null)).isEqualTo(Note.TITLE);
+        } finally {
+            database.execSQL("DROP TABLE temp.updatedColumns");
+            database.execSQL("DROP TRIGGER temp." + Note.TITLE + "Updated");
+            database.execSQL("DROP TRIGGER temp." + Note.BODY + "Updated");
+        }
+    }
+
+    @Test
+    public void testUpsertReplacesRowWithSameId() {
+        Note existing = new Select().from(Note.class).fetchSingle();
+        int count = new Select().from(Note.class).fetch().size();
+
+        Note note = new Note();
+        note.setId(existing.getId());
+        note.title = "UPSERTED TITLE";
+        note.body = "UPSERTED BODY";
+        Ellie.getInstance().getModelRepository(Note.class).upsert(note);
+
+        assertThat(new Select().from(Note.class).fetch()).hasSize(count);
+        CursorIterator<Note> iterator = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", existing.getId()).iterate(false);
+        try {
+            assertThat(iterator.next().title).isEqualTo("UPSERTED TITLE");
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Test(expected = SQLiteConstraintException.class)
+    public void testUpsertReportsOtherConstraintViolations() {
+        Tag tag = new Tag();
+        tag.setId(Long.MAX_VALUE);
+        Ellie.getInstance().getModelRepository(Tag.class).upsert(tag);
+    }
+
+    @Test
+    public void testUpsertMatchesUniqueKeyWithAndWithoutNativeUpsert() {
+        for (boolean nativeUpsert : new boolean[]{true, false}) {
+            // The native statement is only used if the SQLite version supports it.
+            EllieConfig config = new EllieConfig.Builder().nativeUpsert(nativeUpsert).build();
+            Ellie ellie = new Ellie();
+            ellie.init(Robolectric.application, "OllieSample.db", 1, config);
+            try {
+                ModelRepository<UniqueTag> repository = ellie.getModelRepository(UniqueTag.class);
+                String prefix = nativeUpsert ? "NATIVE " : "FALLBACK ";
+
+                UniqueTag first = new UniqueTag();
+                first.name = prefix + "FIRST";
+                repository.upsert(first);
+                UniqueTag second = new UniqueTag();
+                second.name = prefix + "SECOND";
+                repository.upsert(second);
+
+                // The row with the same key is updated, although another row has the id of the entity.
+                UniqueTag sameKey = new UniqueTag();
+                sameKey.setId(first.getId());
+                sameKey.name = prefix + "SECOND";
+                sameKey.description = "UPDATED";
+                assertThat(repository.upsert(sameKey)).isEqualTo(second.getId());
+                assertThat(
+                        DatabaseUtils.stringForQuery(
+                                ellie.getDatabase(),
+                                "SELECT " + UniqueTag.DESCRIPTION + " FROM uniqueTags WHERE " + Model.COLUMN_ID + "=?",
+                                new String[]{second.getId().toString()}
+                        )
+                ).isEqualTo("UPDATED");
+
+                // Without a row with the same key, the entity is inserted with its id, which is taken.
+                UniqueTag newKey = new UniqueTag();
+                newKey.setId(first.getId());
+                newKey.name = prefix + "THIRD";
+                boolean rejected = false;
+                try {
+                    repository.upsert(newKey);
+                } catch (SQLiteConstraintException ignored) {
+                    rejected = true;
+                }
+                assertThat(rejected).isTrue();
+                assertThat(
+                        DatabaseUtils.longForQuery(
+                                ellie.getDatabase(),
+                                "SELECT COUNT(*) FROM uniqueTags WHERE " + UniqueTag.NAME + "=?",
+                                new String[]{prefix + "THIRD"}
+                        )
+                ).isEqualTo(0);
+            } finally {
+                ellie.getQueryExecutor().shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledQueryBindsNewArguments() {
+        CompiledQuery<Note> query = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", 0).compile();
+        for (Note note : new Select().from(Note.class).<Note>fetch()) {
+            assertThat(query.fetchSingle(note.getId())).isSameAs(note);
+        }
+        assertThat(query.fetch()).isEmpty();
+    }
+
+    @Test
+    public void testRepositoryFindsUpdatesAndDeletesById() {
+        ModelRepository<Tag> repository = Ellie.getInstance().getModelRepository(Tag.class);
+        Tag tag = new Tag();
+        tag.name = "BY ID";
+        repository.create(tag);
+        repository.removeEntity(tag);
+
+        Tag found = repository.find(tag.getId());
+        assertThat(found).isNotSameAs(tag);
+        assertThat(found.name).isEqualTo("BY ID");
+
+        found.name = "UPDATED BY ID";
+        repository.update(found);
+        repository.removeEntity(found);
+        assertThat(repository.find(tag.getId()).name).isEqualTo("UPDATED BY ID");
+
+        repository.delete(found);
+        repository.removeEntity(found);
+        assertThat(repository.find(tag.getId())).isNull();
+    }
+
+    @Test
+    public void testColumnIndexesFollowTheProjection() {
+        Tag tag = new Tag();
+        tag.name = "PROJECTION";
+        tag.save();
+
+        ModelRepository<Tag> repository = Ellie.getInstance().getModelRepository(Tag.class);
+        for (String projection : new String[]{"*", Tag.NAME + ", " + Model.COLUMN_ID, "*"}) {
+            Cursor cursor = Ellie.getInstance().getDatabase().rawQuery(
+                    "SELECT " + projection + " FROM tags WHERE " + Model.COLUMN_ID + "=?",
+                    new String[]{tag.getId().toString()}
+            );
+            try {
+                assertThat(cursor.moveToFirst()).isTrue();
+                Tag loaded = repository.newInstance();
+                repository.load(loaded, cursor);
+                assertThat(loaded.getId()).isEqualTo(tag.getId());
+                assertThat(loaded.name).isEqualTo("PROJECTION");
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    @Test
+    public void testLoadingRowsWithFactoryBenchmark() throws Exception {
+        final int rowCount = 10000;
+        SQLiteDatabase database = Ellie.getInstance().getDatabase();
+        database.beginTransaction();
+        try {
+            SQLiteStatement insert = database.compileStatement("INSERT INTO notes (title, body) VALUES (?, ?)");
+            try {
+                for (int i = 0; i < rowCount; i++) {
+                    insert.bindString(1, "BENCHMARK " + i);
+                    insert.bindString(2, "BODY");
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+
+            // Warm up both paths before timing them.
+            loadBenchmarkNotes(database, true);
+            loadBenchmarkNotes(database, false);
+
+            long start = System.nanoTime();
+            int factoryCount = loadBenchmarkNotes(database, true);
+            long factoryNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int reflectionCount = loadBenchmarkNotes(database, false);
+            long reflectionNanos = System.nanoTime() - start;
+
+            System.out.println(
+                    String.format(
+                            "Loaded %d rows in %d ms with the generated factory, in %d ms with reflection.",
+                            rowCount,
+                            TimeUnit.NANOSECONDS.toMillis(factoryNanos),
+                            TimeUnit.NANOSECONDS.toMillis(reflectionNanos)
+                    )
+            );
+            assertThat(factoryCount).isEqualTo(rowCount);
+            assertThat(reflectionCount).isEqualTo(rowCount);
+        } finally {
+            // Roll back, so the rows do not affect other tests.
+            database.endTransaction();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWriteFromOtherThreadDuringTransactionDoesNotDeadlock() throws InterruptedException {
+        final Thread writer = new Thread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Tag tag = new Tag();
+                        tag.name = "OTHER THREAD";
+                        tag.save();
+                    }
+                }
+        );
+
+        Transaction transaction = Ellie.getInstance().beginTransaction();
+        try {
+            Tag first = new Tag();
+            first.name = "TRANSACTION 1";
+            first.save();
+
+            // Let the other thread insert, so that it waits for the connection this transaction holds.
+            writer.start();
+            Thread.sleep(100);
+
+            Tag second = new Tag();
+            second.name = "TRANSACTION 2";
+            second.save();
+            transaction.setSuccessful();
+        } finally {
+            transaction.end();
+        }
+
+        writer.join(5000);
+        assertThat(writer.isAlive()).isFalse();
+        assertThat(new Select().from(Tag.class).where(Tag.NAME + "=?", "OTHER THREAD").fetch()).hasSize(1);
+    }
+
+    @Test
+    public void testQueryArgumentsKeepTheirType() {
+        ResultQuery query = new Select().from(Note.class).where(Model.COLUMN_ID + " + 0 < ?", 1L);
+        assertThat(query.getBindArgs()).isEqualTo(new Object[]{1L});
+        assertThat(query.getArgs()).isEqualTo(new String[]{"1"});
+
+        // An expression has no affinity, so a text argument would compare greater than every integer.
+        assertThat(query.fetch()).isEmpty();
+        assertThat(new Select().from(Note.class).where(Model.COLUMN_ID + " + 0 >= ?", 1L).fetch()).isNotEmpty();
+    }
+
+    @Test
+    public void testPageAfterVisitsAllRowsInOrder() {
+        List<Note> expected = new Select().from(Note.class).orderBy(Note.TITLE + ", " + Model.COLUMN_ID).fetch();
+
+        List<Note> paged = new ArrayList<>();
+        Page<Note> page = new Select().from(Note.class).pageAfter(Note.TITLE, null, 7);
+        paged.addAll(page.getItems());
+        while (page.hasNext()) {
+            page = new Select().from(Note.class).pageAfter(Note.TITLE, page.getNextKey(), 7);
+            assertThat(page.getItems().size()).isLessThanOrEqualTo(7);
+            paged.addAll(page.getItems());
+        }
+
+        assertThat(paged).isEqualTo(expected);
+    }
+
+    @Test
+    public void testPageAfterOrdersByJoinedColumn() {
+        List<Note> expected = new Select("notes.*").from(Note.class).join(NoteTag.class).on("notes._id=noteTags.note")
+                                                   .orderBy("noteTags._id, notes._id").fetch();
+
+        List<Note> paged = new ArrayList<>();
+        Page.Key key = null;
+        do {
+            Page<Note> page = new Select("notes.*").from(Note.class).join(NoteTag.class).on("notes._id=noteTags.note")
+                                                   .pageAfter("noteTags._id", key, 5);
+            paged.addAll(page.getItems());
+            key = page.getNextKey();
+        } while (key != null);
+
+        assertThat(paged).isEqualTo(expected);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPageAfterRejectsDistinctQuery() {
+        new Select("DISTINCT notes.*").from(Note.class).join(NoteTag.class).on("notes._id=noteTags.note").pageAfter(Note.TITLE, null, 5);
+    }
+
+    @Test
+    public void testFetchLazyLoadsWindows() {
+        List<Note> expected = new Select().from(Note.class).orderBy(Model.COLUMN_ID).fetch();
+
+        LazyList<Note> notes = new Select().from(Note.class).orderBy(Model.COLUMN_ID).fetchLazy(3);
+        assertThat(notes).hasSize(expected.size());
+        for (int i = expected.size() - 1; i >= 0; i--) {
+            assertThat(notes.get(i)).isSameAs(expected.get(i));
+        }
+    }
+
+    @Test
+    public void testFetchLazyKeepsDescendingOrder() {
+        List<Note> expected = new Select().from(Note.class).orderBy(Model.COLUMN_ID + " DESC").fetch();
+
+        LazyList<Note> notes = new Select().from(Note.class).orderBy(Model.COLUMN_ID + " DESC").fetchLazy(7);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(notes.get(i)).isSameAs(expected.get(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFetchLazyRejectsLimitedQuery() {
+        new Select().from(Note.class).orderBy(Model.COLUMN_ID).limit("10").fetchLazy();
+    }
+
+    @Test
+    public void testTransactionCommitAppliesCacheAndNotifications() {
+        final List<Class<? extends Model>> changes = new ArrayList<>();
+        Subscription subscription = collectTableChanges(changes);
+
+        final Tag tag = new Tag();
+        tag.name = "TRANSACTION TAG";
+        Transaction transaction = Ellie.getInstance().beginTransaction();
+        try {
+            tag.save();
+            assertThat(changes).isEmpty();
+            transaction.setSuccessful();
+        } finally {
+            transaction.end();
+        }
+        subscription.unsubscribe();
+
+        assertThat(changes).containsExactly(Tag.class);
+        assertThat(Ellie.getInstance().getModelRepository(Tag.class).getEntity(tag.getId())).isSameAs(tag);
+    }
+
+    @Test
+    public void testAnnotatedCacheKeepsEntities() {
+        CachedTag tag = new CachedTag();
+        tag.name = "Cached";
+        tag.save();
+
+        assertThat(Ellie.getInstance().getModelRepository(CachedTag.class).getEntity(tag.getId())).isSameAs(tag);
+    }
+
+    @Test
+    public void testSaveAfterRollbackWritesAgain() {
+        Note note = new Note();
+        note.title = "BEFORE ROLLBACK";
+        note.save();
+
+        note.title = "ROLLED BACK";
+        Transaction transaction = Ellie.getInstance().beginTransaction();
+        try {
+            note.save();
+        } finally {
+            transaction.end();
+        }
+
+        note.save();
+        String title = new Select(Note.TITLE).from(Note.class).where(Model.COLUMN_ID + "=?", note.getId()).fetchValue(String.class);
+        assertThat(title).isEqualTo("ROLLED BACK");
+    }
+
+    @Test
+    public void testNestedTransactionFailureRollsBack() {
+        final Tag tag = new Tag();
+        tag.name = "ROLLED BACK TAG";
+        Ellie.getInstance().runInTransaction(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Transaction nested = Ellie.getInstance().beginTransaction();
+                        try {
+                            tag.save();
+                        } finally {
+                            nested.end();
+                        }
+                    }
+                }
+        );
+
+        assertThat(Ellie.getInstance().getModelRepository(Tag.class).getEntity(tag.getId())).isNull();
+        assertThat(new Select().from(Tag.class).where(Model.COLUMN_ID + "=?", tag.getId()).fetchSingle()).isNull();
+    }
+
+    @Test
+    public void testInitialChangeSetInsertsAllRows() {
+        ChangeSet<Tag> changeSet = new Select().from(Tag.class).<Tag>observableChanges().toBlocking().first();
+
+        assertThat(changeSet.getInserted()).hasSize(changeSet.getResult().size());
+        assertThat(changeSet.getUpdated()).isEmpty();
+        assertThat(changeSet.getRemoved()).isEmpty();
+    }
+
+    @Test
+    public void testFetchAsync() throws Exception {
+        List<Note> notes = new Select().from(Note.class).<Note>fetchAsync().get();
+
+        assertThat(notes).isEqualTo(new Select().from(Note.class).fetch());
+    }
+
     @Test
     public void testLoadEntity() {
         Note note = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", 1L).fetchSingle();
@@ -144,6 +770,62 @@ public class EllieTest {
         assertThat(note.getId()).isNull();
     }
 
+    @Test
+    public void testSqlIsRenderedOnce() {
+        Query query = new Select().from(Note.class).where(Model.COLUMN_ID + "=?", 1L).orderBy("title").limit("1");
+        String sql = query.getSql();
+        assertThat(sql).isEqualTo("SELECT * FROM notes WHERE _id=? ORDER BY title LIMIT 1");
+        assertThat(query.getSql()).isSameAs(sql);
+    }
+
+    @Test
+    public void testRenderingSelectChainsBenchmark() {
+        final int chainCount = 10000;
+
+        // Warm up before timing.
+        for (int i = 0; i < chainCount; i++) {
+            createBenchmarkQuery(i).getSql();
+        }
+
+        long start = System.nanoTime();
+        Query query = null;
+        for (int i = 0; i < chainCount; i++) {
+            query = createBenchmarkQuery(i);
+            query.getSql();
+            query.getBindArgs();
+        }
+        long renderNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < chainCount; i++) {
+            query.getSql();
+            query.getBindArgs();
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        System.out.println(
+                String.format(
+                        "Built and rendered %d select chains in %d ms, rendered one chain %d times in %d ms.",
+                        chainCount,
+                        TimeUnit.NANOSECONDS.toMillis(renderNanos),
+                        chainCount,
+                        TimeUnit.NANOSECONDS.toMillis(cachedNanos)
+                )
+        );
+        assertThat(query.getSql()).isEqualTo("SELECT * FROM notes WHERE title=? AND body=? ORDER BY title LIMIT 10 OFFSET 20");
+        assertThat(query.getBindArgs()).containsExactly("TITLE " + (chainCount - 1), "BODY");
+    }
+
+    @Test
+    public void testSqlIsRenderedAgainAfterJoin() {
+        Select.From from = new Select().from(Note.class);
+        Query query = from.where("tags.name=?", "test");
+        assertThat(query.getSql()).isEqualTo("SELECT * FROM notes WHERE tags.name=?");
+
+        from.join(Tag.class).on("notes._id=tags._id");
+        assertThat(query.getSql()).isEqualTo("SELECT * FROM notes JOIN tags ON notes._id=tags._id WHERE tags.name=?");
+    }
+
     @Test
     public void testSelectSql() {
         String sql;
@@ -359,4 +1041,75 @@ public class EllieTest {
         // TODO: This seems like a bit of work
         // assertThat(note.getId()).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPragmasAreAppliedOnOpen() {
+        Ellie.getInstance().getDatabase().execSQL("PRAGMA synchronous = OFF");
+
+        // The shared instance is already initialized and ignores a new configuration, so open a fresh one.
+        EllieConfig config = new EllieConfig.Builder().synchronous(Synchronous.NORMAL).build();
+        Ellie ellie = new Ellie();
+        ellie.init(Robolectric.application, "OllieSample.db", 1, config);
+        try {
+            long synchronous = DatabaseUtils.longForQuery(ellie.getDatabase(), "PRAGMA synchronous", null);
+            assertThat(synchronous).isEqualTo(Synchronous.NORMAL.ordinal());
+        } finally {
+            ellie.getQueryExecutor().shutdown();
+            ellie.getDatabase().execSQL("PRAGMA synchronous = FULL");
+        }
+    }
+
+    /**
+     * Loads the notes inserted by {@link #testLoadingRowsWithFactoryBenchmark()}, creating each entity with the
+     * generated factory, or with reflection and a repository lookup per row as fetches used to.
+     */
+    private static int loadBenchmarkNotes(final SQLiteDatabase database, final boolean useFactory) throws Exception {
+        Cursor cursor = database.rawQuery("SELECT * FROM notes WHERE title LIKE 'BENCHMARK %'", null);
+        try {
+            ModelRepository<Note> repository = Ellie.getInstance().getModelRepository(Note.class);
+            int[] columnIndexes = repository.getColumnIndexes(cursor);
+            int count = 0;
+            while (cursor.moveToNext()) {
+                Note note;
+                if (useFactory) {
+                    note = repository.newInstance();
+                } else {
+                    note = Note.class.getConstructor().newInstance();
+                    repository = Ellie.getInstance().getModelRepository(Note.class);
+                }
+                repository.load(note, cursor, columnIndexes);
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates a typical select chain for {@link #testRenderingSelectChainsBenchmark()}.
+     */
+    private static Query createBenchmarkQuery(final int index) {
+        return new Select()
+                .from(Note.class)
+                .where(Note.TITLE + "=? AND " + Note.BODY + "=?", "TITLE " + index, "BODY")
+                .orderBy(Note.TITLE)
+                .limit("10")
+                .offset("20");
+    }
+
+    /**
+     * Subscribes to the table changes of the shared instance, adding each changed table to given list until the
+     * returned subscription is unsubscribed.
+     */
+    private static Subscription collectTableChanges(final List<Class<? extends Model>> changes) {
+        return Ellie.getInstance().getTableChanges().subscribe(
+                new Action1<Class<? extends Model>>() {
+                    @Override
+                    public void call(final Class<? extends Model> table) {
+                        changes.add(table);
+                    }
+                }
+        );
+    }
+}
@@ -57,7 +57,10 @@ public class PersistentShadowSQLiteOpenHelper {
     public synchronized SQLiteDatabase getReadableDatabase() {
         if (mDatabase == null) {
             mDatabase = SQLiteDatabase.openDatabase("path", mFactory, 0);
+            mRealHelper.onConfigure(mDatabase);
             mRealHelper.onCreate(mDatabase);
+        } else {
+            mRealHelper.onConfigure(mDatabase);
         }
 
         mRealHelper.onOpen(mDatabase);
@@ -68,7 +71,10 @@ public class PersistentShadowSQLiteOpenHelper {
     public synchronized SQLiteDatabase getWritableDatabase() {
         if (mDatabase == null) {
             mDatabase = SQLiteDatabase.openDatabase("path", mFactory, 0);
+            mRealHelper.onConfigure(mDatabase);
             mRealHelper.onCreate(mDatabase);
+        } else {
+            mRealHelper.onConfigure(mDatabase);
         }
 
         mRealHelper.onOpen(mDatabase);
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.test.util;
+
+import com.nhaarman.ellie.util.ColumnIndexes;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ColumnIndexesTest {
+
+    @Test
+    public void testMatchesSameProjection() {
+        ColumnIndexes columnIndexes = new ColumnIndexes(new String[]{"_id", "name"}, new int[]{0, 1});
+
+        assertThat(columnIndexes.matches(new String[]{"_id", "name"})).isTrue();
+        assertThat(columnIndexes.getIndexes()).containsExactly(0, 1);
+    }
+
+    @Test
+    public void testDoesNotMatchOtherProjection() {
+        ColumnIndexes columnIndexes = new ColumnIndexes(new String[]{"_id", "name"}, new int[]{0, 1});
+
+        assertThat(columnIndexes.matches(new String[]{"name", "_id"})).isFalse();
+        assertThat(columnIndexes.matches(new String[]{"_id"})).isFalse();
+    }
+}
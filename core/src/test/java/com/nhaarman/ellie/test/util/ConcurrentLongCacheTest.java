@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.test.util;
+
+import com.nhaarman.ellie.util.ConcurrentLongCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentLongCacheTest {
+
+    @Test
+    public void testGetReturnsPutValue() {
+        ConcurrentLongCache<String> cache = new ConcurrentLongCache<>(16);
+        cache.put(1, "a");
+        cache.put(2, "b");
+
+        assertThat(cache.get(1)).isEqualTo("a");
+        assertThat(cache.get(2)).isEqualTo("b");
+        assertThat(cache.get(3)).isNull();
+        assertThat(cache.hitCount()).isEqualTo(2);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.putCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictsUnreferencedEntries() {
+        ConcurrentLongCache<String> cache = new ConcurrentLongCache<>(3, 1);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        cache.get(1);
+        cache.get(3);
+        cache.put(4, "d");
+
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(1)).isEqualTo("a");
+        assertThat(cache.get(3)).isEqualTo("c");
+        assertThat(cache.get(4)).isEqualTo("d");
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNeverExceedsMaxSize() {
+        ConcurrentLongCache<Long> cache = new ConcurrentLongCache<>(100);
+        for (long i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.evictionCount()).isEqualTo(10000 - cache.size());
+    }
+
+    @Test
+    public void testEvictAll() {
+        ConcurrentLongCache<String> cache = new ConcurrentLongCache<>(16);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.evictAll();
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.evictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testMatchesMapUnderRandomOperations() {
+        ConcurrentLongCache<Long> cache = new ConcurrentLongCache<>(1000);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(50) * 1024L;
+            if (random.nextBoolean()) {
+                assertThat(cache.put(key, key)).isEqualTo(expected.put(key, key));
+            } else {
+                assertThat(cache.remove(key)).isEqualTo(expected.remove(key));
+            }
+        }
+
+        assertThat(cache.size()).isEqualTo(expected.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertThat(cache.get(entry.getKey())).isEqualTo(entry.getValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final ConcurrentLongCache<Long> cache = new ConcurrentLongCache<>(256);
+        final AtomicInteger mismatches = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final long seed = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20000; i++) {
+                        long key = random.nextInt(1024);
+                        Long value = cache.get(key);
+                        if (value == null) {
+                            cache.put(key, key);
+                        } else if (value != key) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(mismatches.get()).isEqualTo(0);
+        assertThat(cache.size()).isLessThanOrEqualTo(256);
+        assertThat(cache.hitCount() + cache.missCount()).isEqualTo(8 * 20000);
+    }
+}
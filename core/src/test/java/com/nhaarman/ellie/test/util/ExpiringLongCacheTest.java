@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.test.util;
+
+import com.nhaarman.ellie.util.ExpiringLongCache;
+import com.nhaarman.ellie.util.LongLruCache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringLongCacheTest {
+
+    @Test
+    public void testReturnsValueBeforeExpiry() {
+        ExpiringLongCache<String> cache = new ExpiringLongCache<>(new LongLruCache<>(4), 1, TimeUnit.HOURS);
+        cache.put(1, "a");
+
+        assertThat(cache.get(1)).isEqualTo("a");
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExpiredValueIsAMiss() throws InterruptedException {
+        ExpiringLongCache<String> cache = new ExpiringLongCache<>(new LongLruCache<>(4), 1, TimeUnit.MILLISECONDS);
+        cache.put(1, "a");
+        Thread.sleep(5);
+
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.hitCount()).isEqualTo(0);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+}
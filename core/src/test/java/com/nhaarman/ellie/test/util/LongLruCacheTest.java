@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.test.util;
+
+import com.nhaarman.ellie.util.LongLruCache;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongLruCacheTest {
+
+    @Test
+    public void testGetReturnsPutValue() {
+        LongLruCache<String> cache = new LongLruCache<>(4);
+        cache.put(1, "a");
+        cache.put(2, "b");
+
+        assertThat(cache.get(1)).isEqualTo("a");
+        assertThat(cache.get(2)).isEqualTo("b");
+        assertThat(cache.get(3)).isNull();
+        assertThat(cache.hitCount()).isEqualTo(2);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPutReplacesValue() {
+        LongLruCache<String> cache = new LongLruCache<>(4);
+        assertThat(cache.put(1, "a")).isNull();
+        assertThat(cache.put(1, "b")).isEqualTo("a");
+
+        assertThat(cache.get(1)).isEqualTo("b");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.putCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LongLruCache<String> cache = new LongLruCache<>(3);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        cache.get(1);
+        cache.put(4, "d");
+
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.snapshot().keySet()).containsExactly(3L, 1L, 4L);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemove() {
+        LongLruCache<String> cache = new LongLruCache<>(4);
+        cache.put(1, "a");
+        cache.put(2, "b");
+
+        assertThat(cache.remove(1)).isEqualTo("a");
+        assertThat(cache.remove(1)).isNull();
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.get(2)).isEqualTo("b");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testResizeTrimsEldestEntries() {
+        LongLruCache<String> cache = new LongLruCache<>(100);
+        for (long i = 0; i < 100; i++) {
+            cache.put(i, String.valueOf(i));
+        }
+
+        cache.resize(10);
+
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.get(89)).isNull();
+        assertThat(cache.get(90)).isEqualTo("90");
+        assertThat(cache.get(99)).isEqualTo("99");
+    }
+
+    @Test
+    public void testEvictAll() {
+        LongLruCache<String> cache = new LongLruCache<>(4);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.evictAll();
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.evictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testMatchesMapUnderRandomOperations() {
+        LongLruCache<Long> cache = new LongLruCache<>(1000);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(500) * 1024L;
+            if (random.nextBoolean()) {
+                assertThat(cache.put(key, key)).isEqualTo(expected.put(key, key));
+            } else {
+                assertThat(cache.remove(key)).isEqualTo(expected.remove(key));
+            }
+        }
+
+        assertThat(cache.size()).isEqualTo(expected.size());
+        assertThat(cache.snapshot()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ * Copyright (C) 2014 Niek Haarman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nhaarman.ellie.test.util;
+
+import com.nhaarman.ellie.util.ReferenceLongCache;
+import com.nhaarman.ellie.util.ReferenceLongCache.ReferenceType;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReferenceLongCacheTest {
+
+    @Test
+    public void testReturnsSameInstance() {
+        ReferenceLongCache<Object> cache = new ReferenceLongCache<>(ReferenceType.WEAK);
+        Object value = new Object();
+        cache.put(1, value);
+
+        assertThat(cache.get(1)).isSameAs(value);
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.putCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemove() {
+        ReferenceLongCache<Object> cache = new ReferenceLongCache<>(ReferenceType.SOFT);
+        Object value = new Object();
+        cache.put(1, value);
+
+        assertThat(cache.remove(1)).isSameAs(value);
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() {
+        ReferenceLongCache<Long> cache = new ReferenceLongCache<>(ReferenceType.SOFT);
+        Long[] values = new Long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) i;
+            cache.put(i, values[i]);
+        }
+
+        assertThat(cache.size()).isEqualTo(1000);
+        for (int i = 0; i < values.length; i++) {
+            assertThat(cache.get(i)).isSameAs(values[i]);
+        }
+    }
+
+    @Test
+    public void testPurgesCollectedValues() throws InterruptedException {
+        ReferenceLongCache<Object> cache = new ReferenceLongCache<>(ReferenceType.WEAK);
+        Object retained = new Object();
+        cache.put(1, retained);
+        cache.put(2, new Object());
+
+        for (int i = 0; i < 50 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get(1)).isSameAs(retained);
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+}